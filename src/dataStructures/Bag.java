@@ -68,7 +68,7 @@ public class Bag<Item> implements Iterable<Item> {
     public Item remove(Item item) {
         Node<Item> current = first;
         Node<Item> prev = first;
-        while (current.item != item && current != null){
+        while (current != null && current.item != item){
         	prev = current;
         	current = current.next;
         }
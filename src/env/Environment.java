@@ -15,7 +15,7 @@ public class Environment{
     private static final String NEWLINE = System.getProperty("line.separator");
 	
 	EdgeWeightedGraph G;
-	private VertexInfo VI;
+	private volatile VertexInfo VI;
 
 	private boolean _debugMode = false;;
 	
@@ -76,6 +76,16 @@ public class Environment{
         return VI;
     } 
     
+    /**
+     * Replaces the food & police probabilities. The vertex info is swapped as a whole,
+     * so readers on other threads see either the old or the new probabilities.
+     *
+     * @param VI the new vertex info, not modified afterwards
+     */
+    public void setInfo(VertexInfo VI) {
+        this.VI = VI;
+    } 
+    
     /**
      * Updates the locations of the various agents.
      * @return the number of vertices in this edge-weighted graph
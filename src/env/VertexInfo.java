@@ -34,6 +34,11 @@ public class VertexInfo {
     			  vertices[i][j]=vi.vertices[i][j];
       }
     
+   //number of vertices
+    public int V(){
+    	return V;
+    }
+    
    //probabilities getters & setters
     public double getFoodProbability(int v){
     	return vertices[v][0];
@@ -1,6 +1,7 @@
 package graph;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Random;
 
@@ -11,10 +12,12 @@ import io.In;
 public class EdgeWeightedGraph {
     private static final String NEWLINE = System.getProperty("line.separator");
 
-    private final int V;
+    private int V;
     private int E;
     private Bag<Edge>[] adj;
     private ArrayList<int[]> connectedVertexes = null;
+    private int version;	//changes whenever a vertex or an edge is added, removed or reweighted
+    private ShortestPaths shortestPaths = null;
     
     /**
      * Initializes an empty edge-weighted graph with <tt>V</tt> vertices and 0 edges.
@@ -140,6 +143,84 @@ public class EdgeWeightedGraph {
         adj[v].add(e);
         adj[w].add(e);
         E++;
+        changed();
+    }
+
+    /**
+     * Removes every edge between <tt>v</tt> and <tt>w</tt> from this edge-weighted graph.
+     *
+     * @param  v one vertex of the edge
+     * @param  w the other vertex of the edge
+     * @return the removed edges
+     * @throws IndexOutOfBoundsException unless both endpoints are between 0 and V-1
+     */
+    public Iterable<Edge> removeEdge(int v, int w) {
+        validateVertex(v);
+        validateVertex(w);
+        Bag<Edge> removed = new Bag<Edge>();
+        for (Edge e : adj[v]) {
+            // a self loop is met twice
+            if (e.other(v) == w && !contains(removed, e))
+                removed.add(e);
+        }
+        for (Edge e : removed) {
+            adj[v].remove(e);
+            adj[w].remove(e);
+            E--;
+        }
+        changed();
+        return removed;
+    }
+
+    /**
+     * Removes every edge incident to vertex <tt>v</tt>, which stays in the graph without edges
+     * so that vertex indices do not change.
+     *
+     * @param  v the vertex
+     * @return the removed edges
+     * @throws IndexOutOfBoundsException unless 0 <= v < V
+     */
+    public Iterable<Edge> removeVertex(int v) {
+        validateVertex(v);
+        Bag<Edge> removed = new Bag<Edge>();
+        for (Edge e : adj[v]) {
+            if (!contains(removed, e))
+                removed.add(e);
+        }
+        for (Edge e : removed) {
+            int w = e.other(v);
+            adj[v].remove(e);
+            adj[w].remove(e);
+            E--;
+        }
+        changed();
+        return removed;
+    }
+
+    /**
+     * Adds a new vertex without edges to this edge-weighted graph.
+     *
+     * @return the index of the new vertex, <tt>V</tt>-1
+     */
+    public int addVertex() {
+        adj = Arrays.copyOf(adj, V+1);
+        adj[V] = new Bag<Edge>();
+        V++;
+        changed();
+        return V-1;
+    }
+
+    // true if bag holds this very edge
+    private static boolean contains(Bag<Edge> bag, Edge e) {
+        for (Edge f : bag)
+            if (f == e) return true;
+        return false;
+    }
+
+    // drops the cached adjacency matrix and tells cached results the graph changed
+    private void changed() {
+        connectedVertexes = null;
+        version++;
     }
 
     /**
@@ -225,16 +306,64 @@ public class EdgeWeightedGraph {
         return s.toString();
     }
 
-    public void updateEdgeWeight(int v) {   	
-		for (int i=0; i<V; i++){
-			Iterator<Edge> edgeIteror= adj[i].iterator();
-			while (edgeIteror.hasNext()){
-				Edge currEdge = edgeIteror.next();
-				if (currEdge.hasVertex(v))
-					currEdge.updateWeight(Double.POSITIVE_INFINITY);
+    /**
+     * Blocks vertex <tt>v</tt> by setting the weight of every edge incident to it to infinity.
+     *
+     * @param  v the vertex
+     * @return the edges whose weight changed
+     */
+    public Iterable<Edge> updateEdgeWeight(int v) {
+		Bag<Edge> changed = new Bag<Edge>();
+		for (Edge currEdge : adj[v]) {
+			//a self loop is met twice, the second time it is already infinite
+			if (currEdge.weight()!=Double.POSITIVE_INFINITY) {
+				currEdge.updateWeight(Double.POSITIVE_INFINITY);
+				changed.add(currEdge);
 			}
 		}
-		
+		version++;
+		return changed;
+    }
+
+    /**
+     * Sets the weight of the edges between <tt>v</tt> and <tt>w</tt> to <tt>weight</tt>.
+     *
+     * @param  v one vertex of the edge
+     * @param  w the other vertex of the edge
+     * @param  weight the new weight
+     * @return the edges whose weight changed
+     */
+    public Iterable<Edge> updateEdgeWeight(int v, int w, double weight) {
+		Bag<Edge> changed = new Bag<Edge>();
+		for (Edge currEdge : adj[v]) {
+			if (currEdge.other(v)==w && currEdge.weight()!=weight) {
+				currEdge.updateWeight(weight);
+				changed.add(currEdge);
+			}
+		}
+		version++;
+		return changed;
+    }
+
+    /**
+     * Returns a counter that changes whenever a vertex or an edge is added, removed
+     * or reweighted through this graph, so cached results can tell they are stale.
+     *
+     * @return the current version of the graph
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Returns the shortest-path distance service of this graph.
+     *
+     * @return the distance service, shared by all callers
+     */
+    public synchronized ShortestPaths shortestPaths() {
+        if (shortestPaths==null)
+            shortestPaths = new ShortestPaths(this);
+        return shortestPaths;
     }
 
     
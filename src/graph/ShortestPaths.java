@@ -0,0 +1,183 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ *  The <tt>ShortestPaths</tt> class computes shortest distances to a goal (or to the nearest
+ *  of a set of targets) in an {@link EdgeWeightedGraph}, with Dijkstra's algorithm run
+ *  backwards from the targets.
+ *  <p>
+ *  Two variants make the distances usable as optimistic estimates: edges leaving a
+ *  <em>halved</em> vertex cost half their weight, and <em>blocked</em> vertices can not be entered.
+ *  Results of the last {@value #CACHE_SIZE} queries are cached (least recently used first out) and
+ *  dropped when the graph reports a new version, which happens on every change of its vertices, edges
+ *  or edge weights. One-off queries, such as one per pattern of avoided vertices, should use
+ *  {@link #computeDistancesTo}, which neither caches nor locks.
+ *  <p>
+ *  The scan picks the closest unsettled vertex with a linear search, which takes time
+ *  proportional to <em>V</em><sup>2</sup> + <em>E</em> per query; belief spaces limit the graphs
+ *  to a few dozen vertices, where this beats a heap. Returned arrays are shared with the
+ *  cache and must not be modified.
+ */
+public class ShortestPaths {
+
+	//fields
+	private static final int CACHE_SIZE = 64;
+	private final EdgeWeightedGraph G;
+	private int version;
+	private final LinkedHashMap<Query,double[]> cache = new LinkedHashMap<Query,double[]>(16,0.75f,true);	//in access order
+	private double [][] allPairs;
+
+	/**
+	 * Initializes the distance service of graph <tt>G</tt>.
+	 *
+	 * @param  G the edge-weighted graph
+	 */
+	public ShortestPaths(EdgeWeightedGraph G) {
+		this.G=G;
+		this.version=G.version();
+	}
+
+	/**
+	 * Returns the distance from every vertex to <tt>goal</tt>.
+	 *
+	 * @param  goal the goal vertex
+	 * @return the distances, infinite for vertices that can not reach the goal
+	 */
+	public double [] distancesTo(int goal) {
+		return distancesTo(new int [] {goal},null,null);
+	}
+
+	/**
+	 * Returns the distance from every vertex to the nearest of <tt>targets</tt>.
+	 * Edges leaving a vertex <tt>v</tt> with <tt>halved[v]</tt> cost half their weight,
+	 * and a vertex <tt>v</tt> with <tt>blocked[v]</tt> is never entered (a blocked target
+	 * is not reached). Either array may be <tt>null</tt>.
+	 *
+	 * @param  targets the target vertices
+	 * @param  halved per vertex, true if edges leaving it cost half
+	 * @param  blocked per vertex, true if it can not be entered
+	 * @return the distances, infinite for vertices that can not reach a target
+	 */
+	public synchronized double [] distancesTo(int [] targets, boolean [] halved, boolean [] blocked) {
+		validate();
+		Query query = new Query(targets,halved,blocked);
+		double [] distTo = cache.get(query);
+		if (distTo==null) {
+			distTo = dijkstra(targets,halved,blocked);
+			cache.put(query,distTo);
+			if (cache.size()>CACHE_SIZE) {
+				Iterator<Query> eldest = cache.keySet().iterator();
+				eldest.next();
+				eldest.remove();
+			}
+		}
+		return distTo;
+	}
+
+	/**
+	 * Returns the distance from every vertex to the nearest of <tt>targets</tt>, like
+	 * {@link #distancesTo(int[],boolean[],boolean[])}, but computed for this call only:
+	 * the result is not cached and callers do not wait for each other.
+	 *
+	 * @param  targets the target vertices
+	 * @param  halved per vertex, true if edges leaving it cost half
+	 * @param  blocked per vertex, true if it can not be entered
+	 * @return the distances, infinite for vertices that can not reach a target
+	 */
+	public double [] computeDistancesTo(int [] targets, boolean [] halved, boolean [] blocked) {
+		return dijkstra(targets,halved,blocked);
+	}
+
+	/**
+	 * Returns the distance between every pair of vertices, <tt>[v][w]</tt> from <tt>v</tt> to <tt>w</tt>.
+	 *
+	 * @return the all-pairs distance matrix
+	 */
+	public synchronized double [][] allPairs() {
+		validate();
+		if (allPairs==null) {
+			double [][] distances = new double [G.V()][];
+			double [][] to = new double [G.V()][];
+			for (int w=0; w<G.V(); w++)
+				to[w] = dijkstra(new int [] {w},null,null);
+			for (int v=0; v<G.V(); v++) {
+				distances[v] = new double [G.V()];
+				for (int w=0; w<G.V(); w++)
+					distances[v][w]=to[w][v];
+			}
+			allPairs=distances;
+		}
+		return allPairs;
+	}
+
+	//drops the cache if the graph changed since it was filled
+	private void validate() {
+		if (version!=G.version()) {
+			cache.clear();
+			allPairs=null;
+			version=G.version();
+		}
+	}
+
+	//backward dijkstra from the targets, O(V^2 + E)
+	private double [] dijkstra(int [] targets, boolean [] halved, boolean [] blocked) {
+		int V = G.V();
+		double [] distTo = new double [V];
+		boolean [] settled = new boolean [V];
+		Arrays.fill(distTo,Double.POSITIVE_INFINITY);
+		for (int t : targets) {
+			if (blocked==null || !blocked[t])
+				distTo[t]=0;
+		}
+		while (true) {
+			int w=-1;
+			for (int v=0; v<V; v++) {
+				if (!settled[v] && distTo[v]<Double.POSITIVE_INFINITY && (w<0 || distTo[v]<distTo[w]))
+					w=v;
+			}
+			if (w<0)
+				return distTo;
+			settled[w]=true;
+			//vertices are entered when moving towards the targets, a blocked one is a dead end
+			if (blocked!=null && blocked[w])
+				continue;
+			for (Edge e : G.adj(w)) {
+				int v = e.other(w);
+				if (settled[v])
+					continue;
+				double weight = (halved!=null && halved[v]) ? 0.5*e.weight() : e.weight();
+				if (distTo[w]+weight<distTo[v])
+					distTo[v]=distTo[w]+weight;
+			}
+		}
+	}
+
+	//cache key of a distance query
+	private static final class Query {
+		private final int [] targets;
+		private final boolean [] halved;
+		private final boolean [] blocked;
+		private final int hash;
+
+		Query(int [] targets, boolean [] halved, boolean [] blocked) {
+			this.targets=targets.clone();
+			this.halved = (halved==null) ? null : halved.clone();
+			this.blocked = (blocked==null) ? null : blocked.clone();
+			this.hash = 31*(31*Arrays.hashCode(this.targets)+Arrays.hashCode(this.halved))+Arrays.hashCode(this.blocked);
+		}
+
+		public boolean equals(Object other) {
+			if (!(other instanceof Query))
+				return false;
+			Query that = (Query) other;
+			return Arrays.equals(targets,that.targets) && Arrays.equals(halved,that.halved) && Arrays.equals(blocked,that.blocked);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -4,6 +4,7 @@
  */
 
 package main;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import env.Environment;
@@ -11,7 +12,16 @@ import env.VertexInfo;
 import io.In;
 import io.StdIn;
 import io.StdOut;
+import pomdp.BeliefKey;
+import pomdp.BeliefModel;
 import pomdp.BeliefSpace;
+import pomdp.POMCP;
+import pomdp.Plan;
+import pomdp.Planner;
+import pomdp.PolicySnapshot;
+import pomdp.SolveResult;
+import pomdp.StructureImage;
+import pomdp.VertexInfoWatcher;
 
 public class Simulator {
     // change to TRUE to turn on debug mode:
@@ -25,6 +35,8 @@ public class Simulator {
 	private static int sourceVetex;
 	private static int destinationVetex;
 	private static VertexInfo graphInstance=null;
+	private static VertexInfoWatcher watcher=null;
+	private static PolicySnapshot snapshot=null;	//serves the policy until the belief space is created
 
 	public static void main(String[] args) throws IOException {	
 		init(args);
@@ -61,17 +73,93 @@ public class Simulator {
 			destinationVetex = 4;
 		}
 				
-		//creating belief space & policy
-		PrintWriter out =new PrintWriter("illegal states.txt"); 
-		pomdpBeliedSpace = new BeliefSpace(env,sourceVetex,destinationVetex,out); 
-		out.close();
-		pomdpBeliedSpace.calculateOptimalPolicy();
+		//serving the policy from the snapshot of an earlier run if it solved the same graph, probabilities, source & destination,
+		//the belief space is only created & solved if there is no such snapshot
+		boolean watching = watcher!=null;
+		if (watching) {
+			watcher.close();
+			watcher=null;
+		}
+		pomdpBeliedSpace=null;
+		snapshot = policySnapshot("policy_snapshot.bin");
+		if (snapshot!=null) {
+			//the snapshot holds the policy only, the output files are written when the belief space is created
+			System.out.print("Optimal policy loaded from policy_snapshot.bin, belief space not created.\n");
+			System.out.print("States & transitions not printed to output files (delete policy_snapshot.bin to create them).\n\n");
+		}
+		else
+			createBeliefSpace(args);
+		
+		//watching the probabilities file again if it was watched before
+		if (watching)
+			startWatcher(args);
+	}
+	
+	//creating belief space & policy, the states are loaded from the structure image of an earlier run on the same topology
+	private static void createBeliefSpace(String[] args) throws IOException{
+		PrintWriter out;
+		StructureImage image = structureImage("belief_structure.bin");
+		if (image!=null) {
+			pomdpBeliedSpace = new BeliefSpace(env,sourceVetex,image);
+			System.out.print("Belief states loaded from belief_structure.bin.\n");
+		}
+		else {
+			out =new PrintWriter("illegal states.txt"); 
+			pomdpBeliedSpace = new BeliefSpace(env,sourceVetex,destinationVetex,out); 
+			out.close();
+			pomdpBeliedSpace.writeStructure("belief_structure.bin");
+		}
+		SolveResult result = pomdpBeliedSpace.calculateOptimalPolicy();
 		out = new PrintWriter("belief_space.txt");
 		pomdpBeliedSpace.printStates(out);
 		out.close();
-		System.out.print("POMDP Belied space created.\nStates & transitions printed to output files.\n\n");	
+		pomdpBeliedSpace.writeSnapshot("policy_snapshot.bin");
+		System.out.print("POMDP Belied space created.\nStates & transitions printed to output files.\n");
+		System.out.print("Optimal policy calculated ("+result+").\n\n");	
+		snapshot=null;
 	}
 	
+	//re-solving the policy whenever the probabilities file changes
+	private static void startWatcher(String[] args) throws IOException{
+		watcher = new VertexInfoWatcher(beliefSpace(args),args[1],System.out);
+		watcher.start();
+	}
+	
+	//belief space, created if the policy was served from a snapshot until now
+	private static BeliefSpace beliefSpace(String[] args) throws IOException{
+		if (pomdpBeliedSpace==null)
+			createBeliefSpace(args);
+		return pomdpBeliedSpace;
+	}
+	
+	//policy snapshot in file if it solved the current graph, probabilities, source & destination, null otherwise
+	private static PolicySnapshot policySnapshot(String file) {
+		if (!new File(file).exists())
+			return null;
+		try {
+			PolicySnapshot snapshot = PolicySnapshot.load(file);
+			if (snapshot.matches(env,sourceVetex,destinationVetex))
+				return snapshot;
+		} catch (IOException e) {
+			//unreadable snapshot, the policy is solved again
+		}
+		return null;
+	}
+	
+	
+	//structure image in file if it was written for the current graph, source & destination, null otherwise
+	private static StructureImage structureImage(String file) {
+		if (!new File(file).exists())
+			return null;
+		try {
+			StructureImage image = StructureImage.load(file);
+			if (image.matches(env.Graph(),sourceVetex,destinationVetex,BeliefSpace.Construction.FULL))
+				return image;
+		} catch (IOException e) {
+			//unreadable image, the belief space is built again
+		}
+		return null;
+	}
 	
 	//Main simulator function
 	private static void simulate(String[] args) throws IOException{
@@ -84,7 +172,10 @@ public class Simulator {
 							"2. Set new graph & route" + NEWLINE+ 
 							"3. Set police & food locations" + NEWLINE+ 
 							"4. Run simulation" + NEWLINE+ 
-							"5. Quit");
+							"5. Quit" + NEWLINE+ 
+							"6. Run online simulation (POMCP)" + NEWLINE+ 
+							"7. Reload food & police probabilities" + NEWLINE+ 
+							"8. "+(watcher==null ? "Start" : "Stop")+" watching food & police probabilities file");
 			int firstAction = StdIn.readInt();
 			
 			if (firstAction==1) {
@@ -105,13 +196,76 @@ public class Simulator {
 					StdOut.println("Please set graph instance before running simulation:.\n\n");
 				else {
 					StdOut.println(graphInstance);
-					pomdpBeliedSpace.PrintOptimalPolicy(graphInstance);
+					if (snapshot!=null)
+						snapshot.printPlan(snapshot.execute(new BeliefModel(env,destinationVetex),graphInstance,new Plan()),System.out);
+					else
+						pomdpBeliedSpace.PrintOptimalPolicy(graphInstance);
 				}
 			}
 			if (firstAction==5) {
 				stopSimulation=true;
+				if (watcher!=null)
+					watcher.close();
+			}
+			if (firstAction==6) {
+				if (graphInstance==null) 
+					StdOut.println("Please set graph instance before running simulation:.\n\n");
+				else {
+					StdOut.println(graphInstance);
+					BeliefModel model = new BeliefModel(env,destinationVetex);
+					POMCP planner = new POMCP(model);
+					try {
+						runOnline(model,planner,graphInstance);
+					} finally {
+						planner.shutdown();
+					}
+				}
+			}
+			if (firstAction==7) {
+				In vertexInfoIn = new In(args[1]);
+				SolveResult result = beliefSpace(args).updateProbabilities(new VertexInfo(vertexInfoIn));
+				StdOut.println("\nFood & police probabilities:");
+				StdOut.println(env.Info());
+				StdOut.println("Optimal policy recalculated ("+result+").\n");
+			}
+			if (firstAction==8) {
+				if (watcher==null) {
+					startWatcher(args);
+					StdOut.println("Watching "+args[1]+", optimal policy is recalculated whenever it changes.\n");
+				}
+				else {
+					watcher.close();
+					watcher=null;
+					StdOut.println("Stopped watching "+args[1]+".\n");
+				}
+			}
+		}
+	}
+	
+	//runs a planner on the set instance, asking it for one move at a time
+	private static void runOnline(BeliefModel model, Planner planner, VertexInfo instance) {
+		int v = sourceVetex;
+		BeliefKey key = model.observe(null,v,instance);
+		StdOut.println("starting at v"+v+": "+key);
+		for (int step=0; step<model.V()*(model.V()+1); step++) {
+			if (model.isGoal(v)) {
+				StdOut.println("Reached to goal!");
+				StdOut.println("----------------------------------------------------");
+				return;
+			}
+			int next = model.isTerminal(v,key) ? -1 : planner.nextVertex(v,key);
+			if (next<0) {
+				StdOut.println("No avalible transitions, agent has no moves!");
+				StdOut.println("----------------------------------------------------");
+				return;
 			}
+			v=next;
+			key = model.observe(key,v,instance);
+			StdOut.println("traversing to v"+v+":");
+			StdOut.println("current state: "+key);
 		}
+		StdOut.println("Step limit reached, agent did not reach the goal!");
+		StdOut.println("----------------------------------------------------");
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+package pomdp;
+
+import java.util.Arrays;
+
+/**
+ *  The <tt>BeliefKey</tt> class is the packed form of a state's food & police certainties.
+ *  Three bitmasks of W=ceil(V/64) words each are kept in one long array:
+ *  a "known" mask, and "food" and "police" value masks (value bits are only set where known).
+ *  For V<=64 every mask is a single long, so equality, legality and transition
+ *  checks become a handful of bitwise operations instead of O(V) loops.
+ *  Keys are immutable.
+ */
+public final class BeliefKey {
+
+	//fields
+	private final int V;
+	private final int words;
+	private final long [] bits; //[known | food | police], words longs each
+	private int hash;
+
+	//constructor - all vertices unknown
+	public BeliefKey(int V) {
+		this.V=V;
+		this.words=words(V);
+		this.bits=new long [3*words];
+	}
+
+	//packed constructor
+	BeliefKey(int V, long [] bits) {
+		this.V=V;
+		this.words=words(V);
+		this.bits=bits;
+	}
+
+	//number of longs needed per mask for V vertices
+	public static int words (int V) {
+		return Math.max(1,(V+63)>>>6);
+	}
+
+	//creates a vertex mask from a connected vertexes array, optionally including vertex v itself
+	public static long [] mask (int [] connectedVetexes, int v) {
+		long [] mask = new long [words(connectedVetexes.length)];
+		for (int i=0; i<connectedVetexes.length; i++) {
+			if (connectedVetexes[i]==1 || i==v)
+				mask[i>>>6]|=1L<<i;
+		}
+		return mask;
+	}
+
+	//number of vertices
+	public int V () {
+		return V;
+	}
+
+	//longs per mask
+	int words () {
+		return words;
+	}
+
+	//raw word getter, index in [0,3*words)
+	long word (int i) {
+		return bits[i];
+	}
+
+	//true if food & police in vertex v are known
+	public boolean known (int v) {
+		return (bits[v>>>6] & (1L<<v))!=0;
+	}
+
+	//food certainty at v (0 - no, 1 - yes, 2 - unknown)
+	public int food (int v) {
+		if (!known(v))
+			return 2;
+		return (bits[words+(v>>>6)] & (1L<<v))!=0 ? 1 : 0;
+	}
+
+	//police certainty at v (0 - no, 1 - yes, 2 - unknown)
+	public int police (int v) {
+		if (!known(v))
+			return 2;
+		return (bits[2*words+(v>>>6)] & (1L<<v))!=0 ? 1 : 0;
+	}
+
+	//key with the same known vertices and every value cleared, shared by all keys of equal knowledge
+	public BeliefKey knowledge () {
+		long [] known = new long [3*words];
+		System.arraycopy(bits,0,known,0,words);
+		return new BeliefKey(V,known);
+	}
+
+	//returns a copy of this key with vertex v revealed to the given values
+	public BeliefKey reveal (int v, boolean food, boolean police) {
+		long [] next = bits.clone();
+		int w = v>>>6;
+		long bit = 1L<<v;
+		next[w]|=bit;
+		next[words+w] = food ? (next[words+w]|bit) : (next[words+w]&~bit);
+		next[2*words+w] = police ? (next[2*words+w]|bit) : (next[2*words+w]&~bit);
+		return new BeliefKey(V,next);
+	}
+
+	//food certainties as an array, for printing
+	public int [] foodCertinties () {
+		int [] ans = new int [V];
+		for (int i=0; i<V; i++)
+			ans[i]=food(i);
+		return ans;
+	}
+
+	//police certainties as an array, for printing
+	public int [] policeCertinties () {
+		int [] ans = new int [V];
+		for (int i=0; i<V; i++)
+			ans[i]=police(i);
+		return ans;
+	}
+
+	@Override
+	public boolean equals (Object other) {
+		if (this==other)
+			return true;
+		if (!(other instanceof BeliefKey))
+			return false;
+		BeliefKey that = (BeliefKey) other;
+		return this.V==that.V && Arrays.equals(this.bits,that.bits);
+	}
+
+	//deterministic hash, stable across runs
+	@Override
+	public int hashCode () {
+		int h = hash;
+		if (h==0) {
+			long x = HASH_SEED;
+			for (int i=0; i<bits.length; i++)
+				x = mix(x ^ bits[i]);
+			h = fold(x);
+			hash=h;
+		}
+		return h;
+	}
+
+	//start of the hash chain over the words of a key, see hashCode
+	static final long HASH_SEED = 0x9E3779B97F4A7C15L;
+
+	//hash code of a key from the end of its hash chain, never 0
+	static int fold (long x) {
+		int h = (int)(x ^ (x>>>32));
+		return (h==0) ? 1 : h;
+	}
+
+	//64 bit finalizer (murmur3)
+	static long mix (long x) {
+		x ^= x>>>33;
+		x *= 0xff51afd7ed558ccdL;
+		x ^= x>>>33;
+		x *= 0xc4ceb93e53e3a6d5L;
+		x ^= x>>>33;
+		return x;
+	}
+
+	//appending food & police certainties
+	public String toString() {
+		StringBuilder ans = new StringBuilder();
+		ans.append("food:");
+		for (int i=0; i<V; i++)
+			ans.append(food(i)+" ");
+		ans.append(", police:");
+		for (int i=0; i<V; i++)
+			ans.append(police(i)+" ");
+		return ans.toString();
+	}
+}
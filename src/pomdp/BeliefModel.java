@@ -0,0 +1,189 @@
+package pomdp;
+
+import java.util.ArrayList;
+
+import env.Environment;
+import env.VertexInfo;
+import graph.Edge;
+import graph.EdgeWeightedGraph;
+
+/**
+ *  The <tt>BeliefModel</tt> class generates belief states directly from the problem definition.
+ *  Given a state (vertex, key) and a neighbouring vertex it produces the possible observation
+ *  outcomes of moving there (every food/police combination of the newly observed vertices)
+ *  and their probabilities, without comparing against any other enumerated state.
+ */
+public class BeliefModel {
+
+	//fields
+	private final EdgeWeightedGraph graph;
+	private final int V;
+	private final int goal;
+	private final long [][] neighbourhoods; //closed neighbourhood mask per vertex
+	private final double [] foodProbabilities;
+	private final double [] policeProbabilities;
+
+	//constructors
+	public BeliefModel(Environment env, int goal) {
+		this(env.Graph(),env.Info(),goal);
+	}
+
+	//the probabilities are copied from VI
+	public BeliefModel(EdgeWeightedGraph graph, VertexInfo VI, int goal) {
+		this.graph=graph;
+		this.V=graph.V();
+		this.goal=goal;
+		neighbourhoods = new long [V][];
+		for (int v=0; v<V; v++)
+			neighbourhoods[v]=BeliefKey.mask(graph.connectedVetexes(v),v);
+		foodProbabilities = new double [V];
+		policeProbabilities = new double [V];
+		for (int v=0; v<V; v++) {
+			foodProbabilities[v]=VI.getFoodProbability(v);
+			policeProbabilities[v]=VI.getPoliceProbability(v);
+		}
+	}
+
+	//number of vertices
+	public int V () {
+		return V;
+	}
+
+	//goal vertex
+	public int goal () {
+		return goal;
+	}
+
+	//graph getter
+	public EdgeWeightedGraph graph () {
+		return graph;
+	}
+
+	//largest finite edge weight, edges of blocked vertices are infinite and can never be taken
+	public double maxWeight () {
+		double maxWeight=0;
+		for (Edge e : graph.edges()) {
+			if (e.weight()<Double.POSITIVE_INFINITY)
+				maxWeight = Math.max(maxWeight,e.weight());
+		}
+		return maxWeight;
+	}
+
+	//mask of v and its neighbours
+	public long [] neighbourhood (int v) {
+		return neighbourhoods[v];
+	}
+
+	//food probability at v
+	public double foodProbability (int v) {
+		return foodProbabilities[v];
+	}
+
+	//police probability at v
+	public double policeProbability (int v) {
+		return policeProbabilities[v];
+	}
+
+	//true if agent is at goal
+	public boolean isGoal (int v) {
+		return v==goal;
+	}
+
+	//true if agent is at goal or police is known to be at goal
+	public boolean isTerminal (int v, BeliefKey key) {
+		return v==goal || key.police(goal)==1;
+	}
+
+	//all possible keys when the agent starts at source (source itself can't hold police)
+	public ArrayList<BeliefKey> initialKeys (int source) {
+		ArrayList<BeliefKey> ans = new ArrayList<BeliefKey>();
+		BeliefKey empty = new BeliefKey(V);
+		for (int food=0; food<2; food++)
+			reveal(empty.reveal(source,food==1,false),neighbourhoods[source],ans);
+		return ans;
+	}
+
+	//all possible keys after moving from a state with key to w, empty if w is known to have police
+	public ArrayList<BeliefKey> outcomes (BeliefKey key, int w) {
+		ArrayList<BeliefKey> ans = new ArrayList<BeliefKey>();
+		if (key.police(w)==1)
+			return ans;
+		reveal(key,neighbourhoods[w],ans);
+		return ans;
+	}
+
+	//adds every food/police combination of the unknown vertices of mask to key
+	private void reveal (BeliefKey key, long [] mask, ArrayList<BeliefKey> ans) {
+		int [] unknown = new int [V];
+		int k=0;
+		for (int i=0; i<V; i++) {
+			if ((mask[i>>>6] & (1L<<i))!=0 && !key.known(i))
+				unknown[k++]=i;
+		}
+		//base 4 counter with a digit per unknown vertex, so any number of them can be enumerated
+		int [] digits = new int [k];
+		while (true) {
+			BeliefKey next = key;
+			for (int j=0; j<k; j++)
+				next = next.reveal(unknown[j],(digits[j]&1)!=0,(digits[j]&2)!=0);
+			ans.add(next);
+			int j=0;
+			while (j<k && ++digits[j]==4) {
+				digits[j]=0;
+				j++;
+			}
+			if (j==k)
+				return;
+		}
+	}
+
+	//probability of observing the values revealed in to, given from
+	public double probability (BeliefKey from, BeliefKey to) {
+		double probability=1;
+		for (int i=0; i<V; i++) {
+			if (from.known(i) || !to.known(i))
+				continue;
+			if (to.food(i)==1)
+				probability*=foodProbabilities[i];
+			else
+				probability*=Math.abs(1-foodProbabilities[i]);
+			if (to.police(i)==1)
+				probability*=policeProbabilities[i];
+			else
+				probability*=Math.abs(1-policeProbabilities[i]);
+		}
+		return probability;
+	}
+
+	//probability of observing the values revealed in state to, given state from, read from the key words of store
+	public double probability (StateStore store, int from, int to) {
+		int words = BeliefKey.words(V);
+		double probability=1;
+		for (int i=0; i<words; i++) {
+			long revealed = store.word(to,i) & ~store.word(from,i);
+			long food = store.word(to,words+i);
+			long police = store.word(to,2*words+i);
+			for (; revealed!=0; revealed&=revealed-1) {
+				long bit = revealed & -revealed;
+				int v = (i<<6)+Long.numberOfTrailingZeros(bit);
+				probability *= ((food&bit)!=0) ? foodProbabilities[v] : Math.abs(1-foodProbabilities[v]);
+				probability *= ((police&bit)!=0) ? policeProbabilities[v] : Math.abs(1-policeProbabilities[v]);
+			}
+		}
+		return probability;
+	}
+
+	//key after arriving at v when the real locations are VI, known values of key are kept
+	public BeliefKey observe (BeliefKey key, int v, VertexInfo VI) {
+		if (key==null)
+			key = new BeliefKey(V);
+		if (!key.known(v))
+			key = key.reveal(v, (int)VI.getFoodProbability(v)==1, (int)VI.getPoliceProbability(v)==1);
+		for (Edge e : graph.adj(v)) {
+			int i = e.other(v);
+			if (!key.known(i))
+				key = key.reveal(i, (int)VI.getFoodProbability(i)==1, (int)VI.getPoliceProbability(i)==1);
+		}
+		return key;
+	}
+}
@@ -1,348 +1,753 @@
 package pomdp;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import env.*;
+import graph.Edge;
 
 public class BeliefSpace {
 	
+	//how states are created
+	public enum Construction {
+		FULL,		//every legal state of every vertex
+		REACHABLE	//only states reachable from the source vertex
+	}
+	
 	//fields
-	private ArrayList<FoodNode> foodNodes;
-	private ArrayList<PoliceNode> policeNodes;
-	private ArrayList<ArrayList<State>> states;
+	private BeliefModel model;
+	private StateStore store;
+	private StateIndex index;
+	private TransitionStructure structure;	//legal transitions by state id
+	private TransitionModel transitions;
 	private Environment env;
 	private int sourceVetex;
 	private int goalVertex;
+	private Construction construction;
+	private BitSet retired = new BitSet();	//states no longer legal after a topology change
+	private Parallel parallel;
+	//writers (solving and updates) hold the write lock, queries of the policy the read lock
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private int version;	//number of updates of the graph, states or probabilities, guarded by lock
 	
-	//constructor
+	//constructors
 	public BeliefSpace(Environment env, int source, int goal, PrintWriter out) throws IOException {
-		states = new ArrayList<ArrayList<State>>();
-		foodNodes = new ArrayList<FoodNode>();
-		policeNodes = new ArrayList<PoliceNode>();
+		this(env,source,goal,out,Construction.FULL);
+	}
+	
+	public BeliefSpace(Environment env, int source, int goal, PrintWriter out, Construction construction) throws IOException {
+		this(env,source,goal,out,construction,false);
+	}
+	
+	//offHeap keeps the state columns (keys, utilities) in direct buffers outside of the java heap
+	public BeliefSpace(Environment env, int source, int goal, PrintWriter out, Construction construction, boolean offHeap) throws IOException {
+		this(env,source,goal,out,construction,offHeap,Runtime.getRuntime().availableProcessors());
+	}
+	
+	//threads is the number of workers building the space, the result does not depend on it
+	public BeliefSpace(Environment env, int source, int goal, PrintWriter out, Construction construction, boolean offHeap, int threads) throws IOException {
+		parallel = new Parallel(threads);
+		store = offHeap ? StateStore.offHeap(env.V()) : StateStore.onHeap(env.V());
+		index = new StateIndex(store);
+		structure = new TransitionStructure();
 		this.sourceVetex=source;
 		this.goalVertex=goal;
 		this.env=env;
-		initialize(out);
+		this.construction=construction;
+		initialize(out,construction);
 	}
 
-	
+	//loads the states and their transitions from a structure image of the environment's topology instead of
+	//enumerating them, only the transition probabilities and rewards are compiled from env
+	//the agent starts at source, an image of only the states reachable from another source is rejected
+	public BeliefSpace(Environment env, int source, StructureImage image) {
+		this(env,source,image,false,Runtime.getRuntime().availableProcessors());
+	}
+
+	public BeliefSpace(Environment env, int source, StructureImage image, boolean offHeap, int threads) {
+		if (image.V()!=env.V() || !image.matches(env.Graph(),source,image.goal(),image.construction()))
+			throw new IllegalArgumentException("Structure image does not belong to the graph and source v"+source);
+		parallel = new Parallel(threads);
+		store = offHeap ? StateStore.offHeap(env.V()) : StateStore.onHeap(env.V());
+		index = new StateIndex(store);
+		structure = new TransitionStructure();
+		this.sourceVetex=source;
+		this.goalVertex=image.goal();
+		this.env=env;
+		this.construction=image.construction();
+		load(image);
+	}
+
+	//creates the states of image in id order, then copies their transitions
+	private void load(StructureImage image) {
+		model = new BeliefModel(env,goalVertex);
+		for (int id=0; id<image.states(); id++) {
+			addState(image.vertex(id),image.key(id));
+			if (image.isRetired(id)) {
+				retired.set(id);
+				store.setAction(id,-1);
+			}
+			structure.startRow(id);
+			for (int g=image.firstTransition(id); g<image.endTransition(id); g++) {
+				structure.addGroup();
+				for (int o=image.firstOutcome(g); o<image.endOutcome(g); o++)
+					structure.addSuccessor(image.successor(o));
+			}
+		}
+		transitions = new TransitionModel(structure,store,model);
+		parallel.shutdown();
+	}
+
+
 	//Initializes the network.
-	private void initialize(PrintWriter out) throws IOException {
-		createStates(out);
-		calculateTransitionStates();
+	private void initialize(PrintWriter out, Construction construction) throws IOException {
+		model = new BeliefModel(env,goalVertex);
+		if (construction==Construction.REACHABLE) {
+			createReachableStates();
+		}
+		else {
+			createStates(out);
+			calculateTransitionStates();
+		}
+		transitions = new TransitionModel(structure,store,model);
+		parallel.shutdown();
 	}
 	
-	//creating states
+	//creating states, every legal state of every vertex is generated directly
+	//keys are streamed from the iterator of each vertex and become states as they are produced,
+	//so states are numbered in vertex order and no key set is held in memory
 	private void createStates(PrintWriter out) throws IOException {
-		//graph, police and food probability nodes
 		int V = env.Graph().V();
-		VertexInfo VI = env.Info();
-		for (int i = 0; i < V; i++) {
-			double foodProbabilty = VI.getFoodProbability(i);
-			FoodNode foodNode = new FoodNode(i,foodProbabilty);
-			foodNodes.add(foodNode);
-			double policeProbabilty = VI.getPoliceProbability(i);
-			PoliceNode policeNode = new PoliceNode(i,policeProbabilty);
-			policeNodes.add(policeNode);
-		}
-
-		//initializing state certinties
-		int base = 3; //number of possibilities per node in the array
-		int factor= (int) Math.pow(base,env.V()); //number of possible permutations for given number 'base'
-		int [][] foodCertinties = new int [factor+1][env.V()]; //food certinties array
-		int [][] policeCertinties = new int [factor+1][env.V()]; //police certinties array
-		fullJoint(foodCertinties,env.V(),0,1,factor,base);
-		fullJoint(policeCertinties,env.V(),0,1,factor,base);
+		BigInteger combinations = BigInteger.valueOf(9).pow(V); //3^V food certinties x 3^V police certinties
 		
 		//for each vertex
-		State newState; 
 		for (int i = 0; i< V; i++) {
-			ArrayList<State> iStates = new ArrayList<State>();
-			int [] connected = env.Graph().connectedVetexes(i);
+			LegalStateIterator iterator = new LegalStateIterator(model,i);
+			BigInteger legal = iterator.count();
 			//assign states with current vertex
-			for (int j = 1; j<=factor; j++) {
-				for (int k = 1; k<=factor; k++) {
-					if (legalState (foodCertinties[j],policeCertinties[k],connected,i)) {
-						newState = new State(i,foodCertinties[j],policeCertinties[k],connected,goalVertex,env.Graph(),states);			
-						iStates.add(newState);
-					} 
-					else {
-						writeIlligalMoveToFlie(out,foodCertinties[j],policeCertinties[k],i);
-					}
+			while (iterator.hasNext())
+				addState(i,iterator.next());
+			out.println("at v"+i+": "+legal+" legal states, "+combinations.subtract(legal)+" illegal states skipped");
+		}
+	}
+	
+	//adds (v,key) to the store and returns its id, or the existing id if it was added before
+	//a new state starts with utility 0 if it is terminal and minus infinity otherwise
+	private int addState(int v, BeliefKey key) {
+		int size = store.size();
+		int id = index.add(v,key);
+		if (id==size) {
+			boolean terminal = model.isTerminal(v,key);
+			store.setGoal(id,model.isGoal(v));
+			store.setTerminal(id,terminal);
+			store.setUtility(id,terminal ? 0 : Double.NEGATIVE_INFINITY);
+		}
+		return id;
+	}
+	
+	//creating only the states reachable from the source, expanding each state's transitions once
+	private void createReachableStates() {
+		ArrayList<Integer> frontier = new ArrayList<Integer>();
+		for (BeliefKey key : model.initialKeys(sourceVetex))
+			reachableState(sourceVetex,key,frontier);
+		
+		expandLevels(frontier,null);
+	}
+	
+	//expands the states of frontier level by level until no new state is reached, expanded collects their ids
+	//the outcomes of a whole level are generated in parallel, new states are numbered in level order
+	private void expandLevels(ArrayList<Integer> frontier, BitSet expanded) {
+		while (!frontier.isEmpty()) {
+			final ArrayList<Integer> level = frontier;
+			final ArrayList<ArrayList<ArrayList<BeliefKey>>> levelOutcomes = new ArrayList<ArrayList<ArrayList<BeliefKey>>>();
+			for (int k=0; k<level.size(); k++)
+				levelOutcomes.add(null);
+			parallel.forEach(level.size(),64,new Parallel.Block() {
+				public void run(int from, int to) {
+					for (int k=from; k<to; k++)
+						levelOutcomes.set(k,outcomes(level.get(k)));
 				}
-			}
-			
-			//add current vertex states
-			states.add(iStates);
+			});
 			
+			frontier = new ArrayList<Integer>();
+			for (int k=0; k<level.size(); k++) {
+				if (expanded!=null)
+					expanded.set(level.get(k));
+				expandReachable(level.get(k),levelOutcomes.get(k),frontier);
+				levelOutcomes.set(k,null);
+			}
 		}
 	}
 	
-	//writing illigal moves to file
-	private void writeIlligalMoveToFlie (PrintWriter out, int[] foodCertinties,int[] policeCertinties, int i) {
-		StringBuilder illigalMove = new StringBuilder();
-		illigalMove.append("at v"+i+": ");
-		illigalMove.append("food:");
-		for (int q=0; q<foodCertinties.length; q++) 
-			illigalMove.append(foodCertinties[i]+" ");		
-		illigalMove.append(", police:");
-		for (int q=0; q<policeCertinties.length; q++) 
-			illigalMove.append(policeCertinties[q]+" ");	
-		out.println(illigalMove);
+	//sets the transitions of state id from the outcome keys of its edges, new states are queued on frontier
+	private void expandReachable(int id, ArrayList<ArrayList<BeliefKey>> edgeOutcomes, ArrayList<Integer> frontier) {
+		structure.startRow(id);
+		for (int e=0; e<edgeOutcomes.size(); e++) {
+			ArrayList<BeliefKey> keys = edgeOutcomes.get(e);
+			if (keys.size()==0)
+				continue;
+			int w = target(id,e);
+			structure.addGroup();
+			for (BeliefKey key : keys)
+				structure.addSuccessor(reachableState(w,key,frontier));
+		}
+	}
+	
+	//outcome keys of moving along every edge (self loops excluded) of the vertex of state id, none if terminal
+	private ArrayList<ArrayList<BeliefKey>> outcomes(int id) {
+		ArrayList<ArrayList<BeliefKey>> ans = new ArrayList<ArrayList<BeliefKey>>();
+		if (store.isTerminal(id))
+			return ans;
+		int v = store.vertex(id);
+		BeliefKey key = store.key(id);
+		for (Edge e : env.Graph().adj(v)) {
+			int w = e.other(v);
+			if (w!=v)
+				ans.add(model.outcomes(key,w));
+		}
+		return ans;
+	}
+	
+	//vertex of the i-th edge (self loops excluded) of the vertex of state id
+	private int target(int id, int i) {
+		int v = store.vertex(id);
+		for (Edge e : env.Graph().adj(v)) {
+			int w = e.other(v);
+			if (w!=v && i--==0)
+				return w;
+		}
+		throw new IndexOutOfBoundsException("edge "+i+" of v"+v);
+	}
+	
+	//returns the id of state (v,key), creating and queueing it if it was not reached before
+	private int reachableState(int v, BeliefKey key, ArrayList<Integer> queue) {
+		int size = store.size();
+		int id = addState(v,key);
+		if (id==size)
+			queue.add(id);
+		else if (retired.get(id))
+			revive(id,queue);
+		return id;
 	}
 	
 	//assign all legal transitions for each legal state
 	private void calculateTransitionStates () {
-		for (int i=0; i<states.size(); i++) {
-			ArrayList<State> iStates =  states.get(i);
-			for (int j = 0; j<iStates.size(); j++) {
-				iStates.get(j).calculateLegalTransitionStates();
+		int [] ids = new int [store.size()];
+		for (int id=0; id<ids.length; id++)
+			ids[id]=id;
+		calculateTransitionStates(ids);
+	}
+	
+	//assign the legal transitions of the states ids, blocks of states are generated in parallel
+	//into structures of their own and then copied in order
+	private void calculateTransitionStates (final int [] ids) {
+		if (ids.length==0)
+			return;
+		final TransitionStructure [] blocks = new TransitionStructure [ids.length]; //by first index of the block
+		parallel.forEach(ids.length,256,new Parallel.Block() {
+			public void run(int from, int to) {
+				TransitionStructure block = new TransitionStructure();
+				for (int k=from; k<to; k++)
+					addTransitions(ids[k],block);
+				blocks[from]=block;
 			}
+		});
+		for (int from=0; from<ids.length; from++) {
+			TransitionStructure block = blocks[from];
+			if (block==null)
+				continue;
+			for (int r=0; r<block.rows(); r++)
+				structure.setRow(ids[from+r],block,r);
+			blocks[from]=null;
 		}
 	}
 	
-	//calculating optimal policy for the given environment
-	public void calculateOptimalPolicy () {
-		boolean stopIteration = false;
-		while (!stopIteration) { //while utilities keep changing 
-			for (int i=states.size()-1; i>=0; i--) {
-				ArrayList <State> iStates = states.get(i);
-				for (int j=iStates.size()-1; j>=0; j--) {
-					State currentState =  iStates.get(j);
-					valueIteration(currentState);
-				}
+	//appends the transitions of state id as a row of rows, the outcomes of moving to each neighbour
+	//are generated by model and resolved to existing states through index
+	private void addTransitions (int id, TransitionStructure rows) {
+		rows.addRow();
+		if (store.isTerminal(id))
+			return;
+		int v = store.vertex(id);
+		BeliefKey key = store.key(id);
+		//move through the edges of current vertex
+		for (Edge edge : model.graph().adj(v)) {
+			int otherVertex = edge.other(v);
+			if (otherVertex==v)
+				continue;
+			rows.addGroup();
+			for (BeliefKey outcome : model.outcomes(key,otherVertex)) {
+				int next = index.find(otherVertex,outcome);
+				if (next>=0)
+					rows.addSuccessor(next);
 			}
-			if (changedUtilities()==0)
-				stopIteration=true;
-		}	
+			rows.dropEmptyGroup();
+		}
 	}
 	
-	private void valueIteration (State currentState) {
-		//state is terminal, no transitions, utility always 0
-		if (currentState.isTerminal()) {
-			currentState.setUtility(currentState.getUtility(),null);
-			return;
+	//calculating optimal policy for the given environment
+	public SolveResult calculateOptimalPolicy () {
+		return calculateOptimalPolicy(new ValueIteration());
+	}
+	
+	//calculating optimal policy with the given solver
+	public SolveResult calculateOptimalPolicy (Solver solver) {
+		lock.writeLock().lock();
+		try {
+			return solver.solve(transitions,store);
+		} finally {
+			lock.writeLock().unlock();
 		}
-		
-		//state is not terminal, find best utility
-		ArrayList <ArrayList <State>> transitionStates = currentState.getLegalTransitionStates();
-		ArrayList <State> transitionGroup = new ArrayList <State>();
-		Double[] utilities = new Double [transitionStates.size()];
-		double tempUtility, weight, probability, nextUtility;
+	}
+
+	//sets the food & police probabilities of the environment to those of VI and re-solves the policy
+	//states and their transitions do not depend on the probabilities, so only the transition
+	//probabilities are compiled again. that happens off to the side while readers keep using the
+	//current policy, then the new model is swapped in and the policy re-converges from the previous utilities
+	public SolveResult updateProbabilities (VertexInfo VI) {
+		VertexInfo info = new VertexInfo(env.V());
+		for (int v=0; v<env.V(); v++) {
+			info.setFoodProbability(v,VI.getFoodProbability(v));
+			info.setPoliceProbability(v,VI.getPoliceProbability(v));
+		}
+		BeliefModel next;
+		TransitionModel compiled;
+		int compiledVersion;
+		lock.readLock().lock();
+		try {
+			compiledVersion=version;
+			next = new BeliefModel(env.Graph(),info,goalVertex);
+			compiled = new TransitionModel(structure,store,next);
+		} finally {
+			lock.readLock().unlock();
+		}
+		lock.writeLock().lock();
+		try {
+			if (version!=compiledVersion) { //the graph or the states changed meanwhile
+				next = new BeliefModel(env.Graph(),info,goalVertex);
+				compiled = new TransitionModel(structure,store,next);
+			}
+			version++;
+			env.setInfo(info);
+			model=next;
+			transitions=compiled;
+			return new WarmValueIteration().solve(transitions,store);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	//re-solves the policy after the weights of changed edges were updated in the graph
+	//only states with a move over a changed edge and the states that can reach them are backed up,
+	//every other state keeps its utility. if no move got more expensive the old utilities are
+	//lower bounds and the region starts from them, otherwise it starts again from minus infinity
+	public SolveResult replan (Iterable<Edge> changed) {
+		lock.writeLock().lock();
+		try {
+			version++;
+			int V = env.V();
+			boolean [][] changedEdge = new boolean [V][V];
+			for (Edge e : changed) {
+				int v = e.either();
+				int w = e.other(v);
+				changedEdge[v][w]=true;
+				changedEdge[w][v]=true;
+			}
+
+			//states whose moves cost something else now
+			int n = transitions.states();
+			BitSet region = new BitSet(n);
+			boolean raised=false; //true if some move got more expensive
+			for (int s=0; s<n; s++) {
+				int v = store.vertex(s);
+				for (int a=transitions.firstAction(s); a<transitions.endAction(s); a++) {
+					int w = transitions.target(a);
+					if (!changedEdge[v][w])
+						continue;
+					double reward = -model.graph().getWeight(v,w);
+					if (store.hasFood(s))
+						reward*=0.5;
+					if (reward!=transitions.reward(a)) {
+						raised |= reward<transitions.reward(a);
+						transitions.setReward(a,reward);
+						region.set(s);
+					}
+				}
+			}
+
+			return resolve(region,raised);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	//updates the belief space after edges were added to or removed from the graph (changed are those edges)
+	//only the ends of the changed edges get new legal states, states of the ends that are no longer
+	//legal are retired (they keep their id but lose their transitions until they are legal again),
+	//and only the transitions of states at the ends and at their old and new neighbours are generated
+	//and compiled again. those states and every state that can reach them are then solved again.
+	//when only reachable states are kept, the states the source can no longer reach are retired as well.
+	//adding a vertex changes every key, which needs a new belief space
+	public SolveResult updateTopology (Iterable<Edge> changed) {
+		lock.writeLock().lock();
+		try {
+			version++;
+			int V = env.V();
+			if (V!=model.V())
+				throw new IllegalStateException("Number of vertices changed from "+model.V()+" to "+V+", the belief space must be built again");
+			BeliefModel old = model;
+			model = new BeliefModel(env,goalVertex);
+			boolean [] ends = new boolean [V];
+			for (Edge e : changed) {
+				ends[e.either()]=true;
+				ends[e.other(e.either())]=true;
+			}
+
+			//vertices whose states get new transitions: the ends and their old and new neighbours
+			boolean [] sources = new boolean [V];
+			for (int x=0; x<V; x++) {
+				if (!ends[x])
+					continue;
+				long [] before = old.neighbourhood(x);
+				long [] after = model.neighbourhood(x);
+				for (int u=0; u<V; u++)
+					sources[u] |= ((before[u>>>6]|after[u>>>6]) & (1L<<u))!=0;
+			}
+
+			//retire the states of the ends that do not know their new neighbours
+			BitSet expanded = new BitSet(); //states with new transitions
+			int n = store.size();
+			for (int id=0; id<n; id++) {
+				int x = store.vertex(id);
+				if (!ends[x] || retired.get(id))
+					continue;
+				long [] neighbourhood = model.neighbourhood(x);
+				boolean legal=true;
+				for (int u=0; u<V && legal; u++)
+					legal = (neighbourhood[u>>>6] & (1L<<u))==0 || known(id,u);
+				if (!legal)
+					retire(id,expanded);
+			}
 
-		//for each transition group (action)
-		for (int i=0; i<transitionStates.size(); i++) {
-			transitionGroup = transitionStates.get(i);
-			tempUtility=0;
-			for (int j=0; j<transitionGroup.size(); j++) { //go over every transition
-				State nextActionState =  transitionGroup.get(j);
-				probability=calculateTransitionProbability(currentState,nextActionState);
-				if (probability>0) { //if probability of occorence>0 then add to utility mulyplied by probability
-					weight = -env.Graph().getWeight(currentState.getCurrentIndex(),nextActionState.getCurrentIndex());
-					if (currentState.hasFood())
-						weight*=0.5;	
-					nextUtility = nextActionState.getUtility();	
-					tempUtility += currentState.getReward()+probability*(weight+nextUtility);	
+			ArrayList<Integer> frontier = new ArrayList<Integer>();
+			for (int id=0; id<n; id++) {
+				if (sources[store.vertex(id)] && !retired.get(id))
+					frontier.add(id);
+			}
+			parallel = new Parallel(parallel.threads());
+			try {
+				if (construction==Construction.REACHABLE) {
+					updateReachable(frontier,ends[sourceVetex],expanded);
+					retireUnreachable(expanded);
 				}
+				else
+					updateLegal(frontier,ends,expanded);
+			} finally {
+				parallel.shutdown();
+			}
+			BitSet region = (BitSet) expanded.clone();
+			region.andNot(retired);
+			transitions = new TransitionModel(transitions,structure,store,model,expanded);
+			return resolve(region,true);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
 
+	//generates the transitions of the states of frontier again, expanding the states reached for the
+	//first time, and reaches the initial states again if the neighbours of the source changed
+	private void updateReachable (ArrayList<Integer> frontier, boolean sourceChanged, BitSet expanded) {
+		if (sourceChanged) {
+			for (BeliefKey key : model.initialKeys(sourceVetex))
+				reachableState(sourceVetex,key,frontier);
+		}
+		expandLevels(frontier,expanded);
+	}
+
+	//adds the new legal states of the ends, then generates the transitions of them and of frontier again
+	private void updateLegal (ArrayList<Integer> frontier, boolean [] ends, BitSet expanded) {
+		int V = env.V();
+		for (int x=0; x<V; x++) {
+			if (!ends[x])
+				continue;
+			LegalStateIterator iterator = new LegalStateIterator(model,x);
+			while (iterator.hasNext()) {
+				BeliefKey key = iterator.next();
+				int size = store.size();
+				int id = addState(x,key);
+				if (id==size)
+					frontier.add(id);
+				else if (retired.get(id))
+					revive(id,frontier);
 			}
-			utilities[i]=tempUtility; //store temp utility
 		}
-		
-		//find max utility 
-		double maxUtility = currentState.getUtility();
-		for (int i=0; i<utilities.length; i++) {
-			if (utilities[i]>maxUtility) {
-				maxUtility=utilities[i];
-				transitionGroup=transitionStates.get(i);
+		int [] ids = new int [frontier.size()];
+		for (int k=0; k<ids.length; k++) {
+			ids[k]=frontier.get(k);
+			expanded.set(ids[k]);
+		}
+		calculateTransitionStates(ids);
+	}
+
+	//retires the states the source can no longer reach, a removed edge may cut off whole regions
+	private void retireUnreachable (BitSet expanded) {
+		int n = store.size();
+		BitSet reached = new BitSet(n);
+		int [] queue = new int [n];
+		int size=0;
+		for (BeliefKey key : model.initialKeys(sourceVetex)) {
+			int id = index.find(sourceVetex,key);
+			if (id>=0 && !reached.get(id)) {
+				reached.set(id);
+				queue[size++]=id;
 			}
 		}
-		
-		//update utility
-		currentState.setUtility(maxUtility, transitionGroup);
+		for (int i=0; i<size; i++) {
+			int id = queue[i];
+			for (int o=structure.firstOutcome(structure.firstGroup(id)); o<structure.firstOutcome(structure.endGroup(id)); o++) {
+				int next = structure.successor(o);
+				if (!reached.get(next)) {
+					reached.set(next);
+					queue[size++]=next;
+				}
+			}
+		}
+		for (int id=0; id<n; id++) {
+			if (!reached.get(id) && !retired.get(id))
+				retire(id,expanded);
+		}
 	}
-	
-	//checks if are changed utilities 
-	private int changedUtilities () {
-		int sum=0;
-		for (int i=0; i<states.size(); i++){
-			ArrayList<State> iStates =  states.get(i);
-			for (int j=0; j<iStates.size(); j++) {
-				State current =  iStates.get(j);
-				if (current.changed())
-					sum++;
+
+	//true if state id knows what is at vertex u
+	private boolean known (int id, int u) {
+		return (store.word(id,u>>>6) & (1L<<u))!=0;
+	}
+
+	//retires state id: it keeps its id and key but loses its transitions, policy and utility until it is legal or reached again
+	private void retire (int id, BitSet expanded) {
+		structure.startRow(id);
+		store.setAction(id,-1);
+		if (!store.isTerminal(id))
+			store.setUtility(id,Double.NEGATIVE_INFINITY);
+		retired.set(id);
+		expanded.set(id);
+	}
+
+	//true if state id was retired by a topology change, it is not part of the belief space until it comes back
+	public boolean isRetired (int id) {
+		lock.readLock().lock();
+		try {
+			return retired.get(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	//brings a retired state back when it is legal again, its transitions are generated again from queue
+	private void revive (int id, ArrayList<Integer> queue) {
+		retired.clear(id);
+		queue.add(id);
+	}
+
+	//solves the states of region and every state that can reach them again, the others keep their utility
+	//reset starts them from minus infinity, otherwise their utilities must be lower bounds
+	private SolveResult resolve (BitSet region, boolean reset) {
+		int n = transitions.states();
+		int [] queue = new int [n];
+		int size=0;
+		for (int s=region.nextSetBit(0); s>=0; s=region.nextSetBit(s+1))
+			queue[size++]=s;
+		for (int i=0; i<size; i++) {
+			int s = queue[i];
+			for (int p=transitions.firstPredecessor(s); p<transitions.endPredecessor(s); p++) {
+				int prev = transitions.predecessor(p);
+				if (!region.get(prev)) {
+					region.set(prev);
+					queue[size++]=prev;
+				}
+			}
+		}
+
+		//gauss-seidel sweeps over the region in reverse id order, like ValueIteration
+		int [] order = new int [size];
+		int count=0;
+		for (int s=region.previousSetBit(n-1); s>=0; s=region.previousSetBit(s-1)) {
+			order[count++]=s;
+			if (reset && !transitions.isTerminal(s)) {
+				store.setUtility(s,Double.NEGATIVE_INFINITY);
+				store.setAction(s,-1);
 			}
 		}
-		return sum;
+		int iterations=0;
+		double residual=0;
+		if (size>0) {
+			do { //while utilities keep changing
+				residual=0;
+				for (int s : order)
+					residual = Math.max(residual,ValueIteration.backup(transitions,s,store));
+				iterations++;
+			} while (residual>0);
+		}
+		return new SolveResult(iterations,(long)iterations*size,residual,true);
 	}
-	
+
 	//prints optimal policy
 	public void PrintOptimalPolicy (VertexInfo generetedGraph) {
-		double maxIter=Double.POSITIVE_INFINITY;
-		State state = findState(sourceVetex,generetedGraph,null);
-		System.out.println("starting state: " +state);
-		//for every transition state:
-		//print it and go to next one depends on the transition outcome
-		ArrayList <State> transitionStates = state.getNextOptimalStates();
-		if (transitionStates==null) {
-			System.out.println("No avalible transitions, agent has no moves!");
-			System.out.println("----------------------------------------------------");
-			return;
+		lock.readLock().lock();
+		try {
+			printPlan(execute(generetedGraph),System.out);
+		} finally {
+			lock.readLock().unlock();
 		}
-		State currentTransitionState=transitionStates.get(0);
-		int currentTransitionVertex = currentTransitionState.getCurrentIndex();
-		State newState =  findState(currentTransitionVertex,generetedGraph,state);
-		System.out.println("traversing to v"+currentTransitionVertex+":");
-		System.out.println(newState);
-		policyLoop(generetedGraph, newState,maxIter);
 	}
 	
-	//helper function for printing optimal policy
-	private void policyLoop (VertexInfo generetedGraph, State state, double maxIter) {
-		if (maxIter==0) //debug condition
-			return;
-		if (state.isTerminal() && state.isGoal()) {
-			System.out.println("Reached to goal!");
-			System.out.println("----------------------------------------------------");
-			return;
-		}
-		ArrayList <State> transitionStates = state.getNextOptimalStates();
-		if (transitionStates==null || (state.isTerminal() && !state.isGoal())) {
-			System.out.println("No avalible transitions, agent has no moves!");
-			System.out.println("----------------------------------------------------");
-			return;
-		}
-		int currentTransitionVertex = transitionStates.get(0).getCurrentIndex();
-		State newState =  findState(currentTransitionVertex,generetedGraph,state);
-		System.out.println("traversing to v"+currentTransitionVertex+":");
-		System.out.println("current state: " +newState);
-		policyLoop(generetedGraph, newState,(maxIter-1));
+	//executes the optimal policy from the source on the realized environment VI
+	public Plan execute (VertexInfo VI) {
+		return execute(VI,new Plan());
 	}
 	
-	//finds current state based on input and privious state
-	public State findState (int v, VertexInfo VI, State prevState) {
-		ArrayList <State> iStates = states.get(v);
-		int [] policeCertinties = new int [env.V()];
-		int [] foodCertinties = new int [env.V()];
-		int [] connectedVetices = env.Graph().connectedVetexes(v);
-		for (int i=0; i<env.V(); i++) {
-			if (connectedVetices[i]==1 || i==v) {
-				policeCertinties[i]=(int)VI.getPoliceProbability(i);
-				foodCertinties[i]=(int)VI.getFoodProbability(i);
-			}
-			else {
-				policeCertinties[i]=2;
-				foodCertinties[i]=2;
-			}
-			if (prevState!=null) {
-				if (prevState.getFoodCertinties()[i]!=2)
-					foodCertinties[i]=prevState.getFoodCertinties()[i];
-				if (prevState.getPoliceCertinties()[i]!=2)
-					policeCertinties[i]=prevState.getPoliceCertinties()[i];
+	//executes the optimal policy from the source on the realized environment VI into plan, which is cleared first
+	//a move is the chosen action of the current state, the state reached is observed from VI. the policy is
+	//deterministic given VI, so an execution longer than the number of states moves in a cycle
+	public Plan execute (VertexInfo VI, Plan plan) {
+		lock.readLock().lock();
+		try {
+			State state = findState(sourceVetex,VI,null);
+			plan.start(sourceVetex,(state==null) ? -1 : state.getId());
+			int limit = store.size();
+			for (int step=0; ; step++) {
+				if (state==null) {
+					plan.finish(Plan.Outcome.STUCK);
+					return plan;
+				}
+				int s = state.getId();
+				if (state.isTerminal() && state.isGoal()) {
+					plan.finish(Plan.Outcome.GOAL);
+					return plan;
+				}
+				int action = store.action(s);
+				if (action<0 || state.isTerminal()) {
+					plan.finish(Plan.Outcome.STUCK);
+					return plan;
+				}
+				if (step==limit) {
+					plan.finish(Plan.Outcome.STEP_LIMIT);
+					return plan;
+				}
+				int a = transitions.firstAction(s)+action;
+				int w = transitions.target(a);
+				state = findState(w,VI,state);
+				plan.step(w,(state==null) ? -1 : state.getId(),-transitions.reward(a));
 			}
+		} finally {
+			lock.readLock().unlock();
 		}
-		for (int i=0; i<iStates.size(); i++) {
-			if (iStates.get(i).equalTo(foodCertinties, policeCertinties, v)) {
-				return  iStates.get(i);
+	}
+	
+	//prints the states of plan and how it ended to out
+	public void printPlan (Plan plan, PrintStream out) {
+		lock.readLock().lock();
+		try {
+			String [] states = new String [plan.steps()+1];
+			for (int i=0; i<states.length; i++) {
+				int s = plan.state(i);
+				states[i] = (s<0) ? "at v"+plan.vertex(i)+": unknown state" : new State(s,store).toString();
 			}
+			plan.print(states,out);
+		} finally {
+			lock.readLock().unlock();
 		}
-		return null;
 	}
 	
-
-	//initialize certainties
-	private static void fullJoint (int [][] certinties,int v, int pos, int line, int factor, int base) {
-		if (pos>=v) 
-			return;
-		for (int i=line; i<line+factor;i++){
-			for (int j=1; j<=base; j++) {
-				if (i<(line+j*(factor/base)) && i>=(line+(j-1)*(factor/base)))
-					certinties[i][pos]=j-1;
-			}
+	//compiles the solved policy to a PolicyTable, retired states are left out
+	public PolicyTable compilePolicy () {
+		lock.readLock().lock();
+		try {
+			return new PolicyTable(store,transitions,retired);
+		} finally {
+			lock.readLock().unlock();
 		}
-		for  (int i=0; i<base; i++) {
-			fullJoint(certinties,v,pos+1,line+i*(factor/base),factor/base,base);
+	}
+	
+	//writes the states and their transitions to file as a StructureImage
+	public void writeStructure (String file) throws IOException {
+		lock.readLock().lock();
+		try {
+			StructureImage.write(file,env.Graph(),sourceVetex,goalVertex,construction,structure,store,retired);
+		} finally {
+			lock.readLock().unlock();
 		}
 	}
 	
-	//calculating transition probability
-	private double calculateTransitionProbability (State sourceState, State destinationState) {
-		int [] foodSource = sourceState.getFoodCertinties();
-		int [] policeSource = sourceState.getPoliceCertinties();
-		int [] foodDest = destinationState.getFoodCertinties();
-		int [] policeDest = destinationState.getPoliceCertinties();
-		double probability=1; //stating at 1.0
-		int v = env.V();
-		for (int i=0; i<v; i++) {
-			//same in source and destination, no change
-			if ((foodSource[i]==foodDest[i]) && (policeSource[i]==policeDest[i]))
-				continue;		
-			
-			//food exist
-			if (foodSource[i]==2 && foodDest[i]==1) 
-				probability=probability*foodNodes.get(i).getFoodPorbability();
-			
-			//food does not exist
-			if (foodSource[i]==2 && foodDest[i]==0)
-				probability=probability*Math.abs((1-foodNodes.get(i).getFoodPorbability()));
-			
-			//police exist
-			if (policeSource[i]==2 && policeDest[i]==1)
-				probability=probability*policeNodes.get(i).getPolicePorbability();
-			
-			//police does not exist
-			if (policeSource[i]==2 && policeDest[i]==0)
-				probability=probability*Math.abs((1-policeNodes.get(i).getPolicePorbability()));
+	//writes the solved policy to file as a PolicySnapshot
+	public void writeSnapshot (String file) throws IOException {
+		lock.readLock().lock();
+		try {
+			PolicySnapshot.write(file,store,transitions,retired,PolicySnapshot.fingerprint(env,sourceVetex,goalVertex),sourceVetex,goalVertex);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	//compiled transitions getter
+	public TransitionModel getTransitions () {
+		return transitions;
+	}
+	
+	//state columns getter
+	public StateStore getStore () {
+		return store;
+	}
+	
+	//finds current state based on input and privious state
+	public State findState (int v, VertexInfo VI, State prevState) {
+		lock.readLock().lock();
+		try {
+			int id = index.find(v,model.observe(prevState==null ? null : prevState.getKey(),v,VI));
+			if (id<0)
+				return null;
+			return new State(id,store);
+		} finally {
+			lock.readLock().unlock();
 		}
-		return probability;
 	}
+	
 
-	//print all states & transitions to out
+	//print all states & transitions to out, by vertex
 	public void printStates(PrintWriter out) {
-		out.println("Legal Belife States:");
-		for (int i=0; i<states.size(); i++) {
-			ArrayList <State> curentVertexStates = states.get(i);
-			for(int j=0; j<curentVertexStates.size(); j++) {
-				out.println("\nState:\n"+curentVertexStates.get(j));
-				ArrayList <ArrayList <State>> transitionStates = curentVertexStates.get(j).getLegalTransitionStates();
-				if (transitionStates!=null) {
-					out.println("Legal transitions:");
-				for (int k=0; k<transitionStates.size(); k++) {
-					ArrayList <State> transitionGroup = transitionStates.get(k);
-					for (int m=0; m<transitionGroup.size(); m++) {
-						State currentTransitionState=transitionGroup.get(m);
-						out.println(currentTransitionState);
-					}
-				} 
+		lock.readLock().lock();
+		try {
+			out.println("Legal Belife States:");
+			int V = env.V();
+			int n = store.size();
+			int [] start = new int [V+1];
+			for (int id=0; id<n; id++) {
+				if (!retired.get(id))
+					start[store.vertex(id)+1]++;
 			}
-			else
-				out.println("NO LEGAL TRANSITION STATES!\n");
+			for (int v=0; v<V; v++)
+				start[v+1]+=start[v];
+			int [] order = new int [start[V]];
+			for (int id=0; id<n; id++) {
+				if (!retired.get(id))
+					order[start[store.vertex(id)]++]=id;
 			}
+			for (int id : order) {
+				out.println("\nState:\n"+new State(id,store));
+				if (structure.hasRow(id)) {
+					out.println("Legal transitions:");
+					for (int o=structure.firstOutcome(structure.firstGroup(id)); o<structure.firstOutcome(structure.endGroup(id)); o++)
+						out.println(new State(structure.successor(o),store));
+				}
+				else
+					out.println("NO LEGAL TRANSITION STATES!\n");
+			}
+		} finally {
+			lock.readLock().unlock();
 		}
 	}
-	
-	//check if state with those params is legal for the eu refugee problem
-	private boolean legalState (int[] foodCertinties,int[] policeCertinties, int [] connectedVetexes, int sourceIndex){
-		//current vertex unknown
-		if (foodCertinties[sourceIndex]==2 || policeCertinties[sourceIndex]==2)
-			return false;	
-		
-		//current vertex has police
-		if (policeCertinties[sourceIndex]==1)
-			return false;
-		
-		//connected vertex unknown
-		for (int i=0; i<connectedVetexes.length; i++) {
-			if (connectedVetexes[i]==1 && (foodCertinties[i]==2 || policeCertinties[i]==2))
-				return false;
-		}
-		
-		//police known and food unknown or other way around in the same vertex
-		for (int i=0; i<connectedVetexes.length; i++) {
-			if ((foodCertinties[i]!=2 && policeCertinties[i]==2) || (foodCertinties[i]==2 && policeCertinties[i]!=2))
-				return false;
-		}
-		return true;
-	}
 
 }
@@ -0,0 +1,264 @@
+package pomdp;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ *  The <tt>BoundedRTDP</tt> class is an anytime trial-based solver (labeled RTDP) over a
+ *  {@link LazyBeliefGraph} rooted at the source belief. Each trial samples a trajectory from a root
+ *  state, following the greedy action and sampling its outcome, and backs up only the states it
+ *  visits. On the way back a state is labeled solved when every state of its greedy subgraph has a
+ *  residual of at most epsilon, and later trials stop at solved states.
+ *  <p>
+ *  The store utilities are upper bounds (they start at the {@link Heuristic}); a second array keeps
+ *  lower bounds, which start at minus infinity and rise like value iteration, so the gap at the
+ *  source bounds the loss of stopping early. Trials run until every root is solved, the time
+ *  budget is spent or the trial limit is reached.
+ *  <p>
+ *  A state that can not reach the goal (also when the goal or a vertex on the way is blocked) falls
+ *  below the {@link LazyBeliefGraph#floor()} and becomes a dead end, where both bounds are minus infinity
+ *  and the state is solved, so the default unbounded budget still ends.
+ */
+public class BoundedRTDP implements Planner {
+
+	//fields
+	private final LazyBeliefGraph graph;
+	private final double epsilon;
+	private final long timeLimit;		//nanoseconds
+	private final int maxTrials;
+	private final int maxDepth;			//longest trial, an optimal trajectory is shorter
+	private final Random random;
+	private final BitSet solved = new BitSet();
+	private double [] lower = new double [0];
+	private int [] mark = new int [0];	//check that last met a state
+	private int checks;
+	private int [] path = new int [16];
+	private int [] open = new int [16];
+	private int [] closed = new int [16];
+
+	//constructors
+	public BoundedRTDP(BeliefModel model, int source) {
+		this(model,source,new ShortestPathHeuristic(model),StateStore.onHeap(model.V()),1e-9,Long.MAX_VALUE,Integer.MAX_VALUE,0);
+	}
+
+	public BoundedRTDP(BeliefModel model, int source, Heuristic heuristic, StateStore store, double epsilon,
+			long timeLimitMillis, int maxTrials, long seed) {
+		if (epsilon<0)
+			throw new IllegalArgumentException("Tolerance must be nonnegative");
+		if (timeLimitMillis<1 || maxTrials<1)
+			throw new IllegalArgumentException("Time limit and number of trials must be positive");
+		this.graph = new LazyBeliefGraph(model,source,store,heuristic);
+		this.epsilon=epsilon;
+		this.timeLimit = (timeLimitMillis>=Long.MAX_VALUE/1000000) ? Long.MAX_VALUE : timeLimitMillis*1000000;
+		this.maxTrials=maxTrials;
+		this.maxDepth=model.V()*(model.V()+1);
+		this.random = new Random(seed);
+	}
+
+	//explored belief space
+	public LazyBeliefGraph graph () {
+		return graph;
+	}
+
+	//runs trials until the roots are solved or the budget is spent, the residual is the gap at the source
+	public SolveResult solve () {
+		long start = System.nanoTime();
+		int trials=0;
+		long backups=0;
+		int [] roots = graph.roots();
+		double [] rootProbabilities = graph.rootProbabilities();
+		while (trials<maxTrials && System.nanoTime()-start<timeLimit) {
+			//sample an unsolved root
+			double total=0;
+			for (int i=0; i<roots.length; i++)
+				if (!isSolved(roots[i]))
+					total+=rootProbabilities[i];
+			if (total==0)
+				break;
+			double sample = random.nextDouble()*total;
+			int root=-1;
+			for (int i=0; i<roots.length && sample>=0; i++) {
+				if (!isSolved(roots[i])) {
+					root=roots[i];
+					sample-=rootProbabilities[i];
+				}
+			}
+			backups+=trial(root);
+			trials++;
+		}
+		boolean converged=true;
+		for (int root : roots)
+			converged &= isSolved(root);
+		return new SolveResult(trials,backups,gap(),converged);
+	}
+
+	//one trajectory from s, returns the number of backups
+	private long trial (int s) {
+		long backups=0;
+		int depth=0;
+		while (!isSolved(s)) {
+			if (depth==path.length)
+				path = Arrays.copyOf(path,depth*2);
+			path[depth++]=s;
+			graph.expand(s);
+			graph.backup(s);
+			backupLower(s);
+			backups++;
+			int a = graph.bestAction(s);
+			if (a<0 || graph.store().utility(s)==Double.NEGATIVE_INFINITY || depth>maxDepth)
+				break;
+			s = sample(a);
+		}
+		while (depth>0) {
+			long checked = checkSolved(path[--depth]);
+			backups+=Math.abs(checked);
+			if (checked<0)
+				break;
+		}
+		return backups;
+	}
+
+	//labels the greedy subgraph of s solved if it is consistent, otherwise backs it up;
+	//returns the number of backups, negated if it was not solved
+	private long checkSolved (int s) {
+		if (isSolved(s))
+			return 0;
+		checks++;
+		boolean consistent=true;
+		int top=0, count=0;
+		open = push(open,top++,s);
+		visit(s);
+		while (top>0) {
+			s = open[--top];
+			closed = push(closed,count++,s);
+			graph.expand(s);
+			ensureCapacity();
+			if (graph.backup(s)>epsilon) {
+				consistent=false;
+				continue;
+			}
+			int a = graph.bestAction(s);
+			if (a<0)
+				continue;
+			for (int o=graph.firstOutcome(a); o<graph.endOutcome(a); o++) {
+				int next = graph.successor(o);
+				if (!isSolved(next) && !visited(next)) {
+					visit(next);
+					open = push(open,top++,next);
+				}
+			}
+		}
+		if (consistent) {
+			for (int i=count-1; i>=0; i--) {
+				backupLower(closed[i]);
+				solved.set(closed[i]);
+			}
+			return count;
+		}
+		for (int i=count-1; i>=0; i--) {
+			graph.backup(closed[i]);
+			backupLower(closed[i]);
+		}
+		return -2L*count;
+	}
+
+	//successor of action a drawn by probability
+	private int sample (int a) {
+		double sample = random.nextDouble();
+		int last = graph.endOutcome(a)-1;
+		for (int o=graph.firstOutcome(a); o<last; o++) {
+			sample-=graph.probability(o);
+			if (sample<0)
+				return graph.successor(o);
+		}
+		return graph.successor(last);
+	}
+
+	//raises the lower bound of s to its best action
+	private void backupLower (int s) {
+		ensureCapacity();
+		if (graph.store().isTerminal(s) || !graph.isExpanded(s))
+			return;
+		double best = lower[s];
+		for (int a=graph.firstAction(s); a<graph.endAction(s); a++) {
+			double utility=0;
+			for (int o=graph.firstOutcome(a); o<graph.endOutcome(a); o++)
+				utility+=graph.probability(o)*(graph.reward(a)+lower(graph.successor(o)));
+			best = Math.max(best,utility);
+		}
+		lower[s] = Math.min(best,graph.store().utility(s));
+	}
+
+	//lower bound of s
+	public double lower (int s) {
+		if (graph.store().isTerminal(s))
+			return 0;
+		return (s<lower.length) ? lower[s] : Double.NEGATIVE_INFINITY;
+	}
+
+	//upper bound of s
+	public double upper (int s) {
+		return graph.store().utility(s);
+	}
+
+	//true if s is terminal or labeled solved
+	public boolean isSolved (int s) {
+		return solved.get(s) || graph.store().isTerminal(s);
+	}
+
+	//upper bound of the expected utility at the source
+	public double upperUtility () {
+		return graph.rootUtility();
+	}
+
+	//lower bound of the expected utility at the source
+	public double lowerUtility () {
+		double utility=0;
+		int [] roots = graph.roots();
+		for (int i=0; i<roots.length; i++)
+			utility+=graph.rootProbabilities()[i]*lower(roots[i]);
+		return utility;
+	}
+
+	//difference between the bounds at the source, 0 once they meet
+	public double gap () {
+		double upper = upperUtility();
+		double lower = lowerUtility();
+		return (upper==lower) ? 0 : upper-lower;
+	}
+
+	//vertex to move to from (vertex,key), -1 if the state was never reached
+	public int nextVertex (int vertex, BeliefKey key) {
+		int s = graph.find(vertex,key);
+		return (s<0) ? -1 : graph.nextVertex(s);
+	}
+
+	private boolean visited (int s) {
+		return mark[s]==checks;
+	}
+
+	private void visit (int s) {
+		ensureCapacity();
+		mark[s]=checks;
+	}
+
+	private static int [] push (int [] stack, int top, int s) {
+		if (top==stack.length)
+			stack = Arrays.copyOf(stack,top*2);
+		stack[top]=s;
+		return stack;
+	}
+
+	//grows the per state arrays to the number of created states
+	private void ensureCapacity () {
+		int states = graph.states();
+		if (states<=lower.length)
+			return;
+		int length = Math.max(states,lower.length*2);
+		int old = lower.length;
+		lower = Arrays.copyOf(lower,length);
+		Arrays.fill(lower,old,length,Double.NEGATIVE_INFINITY);
+		mark = Arrays.copyOf(mark,length);
+	}
+}
@@ -0,0 +1,87 @@
+package pomdp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ *  The <tt>DirectStateStore</tt> class is a {@link StateStore} over direct (off-heap) byte buffers.
+ *  States are fixed size records (vertex, action, utility, flags, key words) kept in chunks of
+ *  {@value #CHUNK} states, so the store is not limited by the 2GB size of a single buffer
+ *  and the garbage collector never scans it.
+ */
+public class DirectStateStore extends StateStore {
+
+	//fields
+	private static final int CHUNK_BITS = 14;
+	private static final int CHUNK = 1<<CHUNK_BITS;
+	private static final int VERTEX = 0;
+	private static final int ACTION = 4;
+	private static final int UTILITY = 8;
+	private static final int FLAGS = 16;
+	private static final int KEY = 24;
+	private final int record; //bytes per state
+	private ByteBuffer [] chunks;
+
+	//constructor
+	public DirectStateStore(int V) {
+		super(V);
+		record = KEY+8*3*words;
+		chunks = new ByteBuffer [0];
+	}
+
+	//byte offset of state id in its chunk
+	private int offset (int id) {
+		return (id & (CHUNK-1))*record;
+	}
+
+	public int vertex (int id) {
+		return chunks[id>>>CHUNK_BITS].getInt(offset(id)+VERTEX);
+	}
+
+	public long word (int id, int i) {
+		return chunks[id>>>CHUNK_BITS].getLong(offset(id)+KEY+8*i);
+	}
+
+	public double utility (int id) {
+		return chunks[id>>>CHUNK_BITS].getDouble(offset(id)+UTILITY);
+	}
+
+	public void setUtility (int id, double utility) {
+		chunks[id>>>CHUNK_BITS].putDouble(offset(id)+UTILITY,utility);
+	}
+
+	public int action (int id) {
+		return chunks[id>>>CHUNK_BITS].getInt(offset(id)+ACTION);
+	}
+
+	public void setAction (int id, int action) {
+		chunks[id>>>CHUNK_BITS].putInt(offset(id)+ACTION,action);
+	}
+
+	protected int flags (int id) {
+		return chunks[id>>>CHUNK_BITS].getInt(offset(id)+FLAGS);
+	}
+
+	protected void setFlags (int id, int flags) {
+		chunks[id>>>CHUNK_BITS].putInt(offset(id)+FLAGS,flags);
+	}
+
+	protected void setVertex (int id, int vertex) {
+		chunks[id>>>CHUNK_BITS].putInt(offset(id)+VERTEX,vertex);
+	}
+
+	protected void setWord (int id, int i, long word) {
+		chunks[id>>>CHUNK_BITS].putLong(offset(id)+KEY+8*i,word);
+	}
+
+	protected void ensureCapacity (int capacity) {
+		int needed = (capacity+CHUNK-1)>>>CHUNK_BITS;
+		if (needed<=chunks.length)
+			return;
+		int old = chunks.length;
+		chunks = Arrays.copyOf(chunks,needed);
+		for (int i=old; i<needed; i++)
+			chunks[i] = ByteBuffer.allocateDirect(CHUNK*record).order(ByteOrder.nativeOrder());
+	}
+}
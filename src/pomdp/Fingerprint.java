@@ -0,0 +1,44 @@
+package pomdp;
+
+import env.VertexInfo;
+import graph.Edge;
+import graph.EdgeWeightedGraph;
+
+/**
+ *  The <tt>Fingerprint</tt> class computes the 64 bit fingerprints that tie a saved file
+ *  ({@link StructureImage}, {@link PolicySnapshot}) to the problem it was written for.
+ *  A fingerprint starts from the graph and every further value is mixed into it with
+ *  {@link BeliefKey}'s finalizer, so the order of the edges does not matter but the order
+ *  of the other values does.
+ */
+final class Fingerprint {
+
+	private Fingerprint() {
+	}
+
+	//fingerprint of the vertices and edge ends of graph, and of the edge weights if weights is set
+	static long graph (EdgeWeightedGraph graph, boolean weights) {
+		long edges=0; //sum, so the order of the edges does not matter
+		for (Edge e : graph.edges()) {
+			int v = e.either();
+			int w = e.other(v);
+			long h = BeliefKey.mix(Math.min(v,w)*0x9E3779B97F4A7C15L+Math.max(v,w));
+			edges += weights ? BeliefKey.mix(h^Double.doubleToLongBits(e.weight())) : h;
+		}
+		return BeliefKey.mix(graph.V()^edges);
+	}
+
+	//adds value to fingerprint x
+	static long add (long x, long value) {
+		return BeliefKey.mix(x^value);
+	}
+
+	//adds the food & police probabilities of the V vertices of VI to fingerprint x
+	static long add (long x, VertexInfo VI, int V) {
+		for (int v=0; v<V; v++) {
+			x = add(x,Double.doubleToLongBits(VI.getFoodProbability(v)));
+			x = add(x,Double.doubleToLongBits(VI.getPoliceProbability(v)));
+		}
+		return x;
+	}
+}
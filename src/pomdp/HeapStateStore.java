@@ -0,0 +1,77 @@
+package pomdp;
+
+import java.util.Arrays;
+
+/**
+ *  The <tt>HeapStateStore</tt> class is a {@link StateStore} over primitive arrays.
+ */
+public class HeapStateStore extends StateStore {
+
+	//fields
+	private int [] vertices;
+	private long [] keys;
+	private double [] utilities;
+	private int [] actions;
+	private byte [] flags;
+
+	//constructor
+	public HeapStateStore(int V) {
+		super(V);
+		vertices = new int [16];
+		keys = new long [16*3*words];
+		utilities = new double [16];
+		actions = new int [16];
+		flags = new byte [16];
+	}
+
+	public int vertex (int id) {
+		return vertices[id];
+	}
+
+	public long word (int id, int i) {
+		return keys[id*3*words+i];
+	}
+
+	public double utility (int id) {
+		return utilities[id];
+	}
+
+	public void setUtility (int id, double utility) {
+		utilities[id]=utility;
+	}
+
+	public int action (int id) {
+		return actions[id];
+	}
+
+	public void setAction (int id, int action) {
+		actions[id]=action;
+	}
+
+	protected int flags (int id) {
+		return flags[id];
+	}
+
+	protected void setFlags (int id, int flags) {
+		this.flags[id]=(byte)flags;
+	}
+
+	protected void setVertex (int id, int vertex) {
+		vertices[id]=vertex;
+	}
+
+	protected void setWord (int id, int i, long word) {
+		keys[id*3*words+i]=word;
+	}
+
+	protected void ensureCapacity (int capacity) {
+		if (capacity<=vertices.length)
+			return;
+		int length = Math.max(capacity,vertices.length*2);
+		vertices = Arrays.copyOf(vertices,length);
+		keys = Arrays.copyOf(keys,length*3*words);
+		utilities = Arrays.copyOf(utilities,length);
+		actions = Arrays.copyOf(actions,length);
+		flags = Arrays.copyOf(flags,length);
+	}
+}
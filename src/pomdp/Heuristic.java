@@ -0,0 +1,20 @@
+package pomdp;
+
+/**
+ *  The <tt>Heuristic</tt> interface estimates the utility of a belief state before it is solved.
+ *  Search solvers need an admissible estimate, one that is never below the optimal utility
+ *  (utilities are minus the expected cost, so 0 is always admissible).
+ *  {@link ShortestPathHeuristic} is the tighter bound from graph distances.
+ */
+public interface Heuristic {
+
+	//admissible heuristic that assumes the goal is reached for free
+	Heuristic ZERO = new Heuristic() {
+		public double utility(int vertex, BeliefKey key) {
+			return 0;
+		}
+	};
+
+	//estimated utility of state (vertex,key)
+	double utility(int vertex, BeliefKey key);
+}
@@ -0,0 +1,105 @@
+package pomdp;
+
+import java.util.Arrays;
+
+/**
+ *  The <tt>IndexedHeap</tt> class is a binary max heap of ids in [0,n) keyed by a double priority,
+ *  kept in primitive arrays with the heap position of each id, so an id's priority can be
+ *  raised in place without duplicate entries.
+ */
+public class IndexedHeap {
+
+	//fields
+	private final int [] heap;		//ids in heap order
+	private final int [] position;	//heap position per id, -1 if not queued
+	private final double [] priority;	//priority per id
+	private int size;
+
+	//constructor
+	public IndexedHeap(int n) {
+		heap = new int [n];
+		position = new int [n];
+		priority = new double [n];
+		Arrays.fill(position,-1);
+	}
+
+	//number of queued ids
+	public int size () {
+		return size;
+	}
+
+	public boolean isEmpty () {
+		return size==0;
+	}
+
+	//true if id is queued
+	public boolean contains (int id) {
+		return position[id]>=0;
+	}
+
+	//largest priority, the heap must not be empty
+	public double maxPriority () {
+		return priority[heap[0]];
+	}
+
+	//queues id, or raises its priority if it is queued with a lower one
+	public void offer (int id, double p) {
+		if (position[id]<0) {
+			heap[size]=id;
+			position[id]=size;
+			priority[id]=p;
+			siftUp(size++);
+		}
+		else if (p>priority[id]) {
+			priority[id]=p;
+			siftUp(position[id]);
+		}
+	}
+
+	//removes and returns the id with the largest priority
+	public int poll () {
+		int top = heap[0];
+		size--;
+		if (size>0) {
+			heap[0]=heap[size];
+			position[heap[0]]=0;
+			siftDown(0);
+		}
+		position[top]=-1;
+		return top;
+	}
+
+	private void siftUp (int i) {
+		int id = heap[i];
+		double p = priority[id];
+		while (i>0) {
+			int parent = (i-1)>>>1;
+			if (priority[heap[parent]]>=p)
+				break;
+			heap[i]=heap[parent];
+			position[heap[i]]=i;
+			i=parent;
+		}
+		heap[i]=id;
+		position[id]=i;
+	}
+
+	private void siftDown (int i) {
+		int id = heap[i];
+		double p = priority[id];
+		while (true) {
+			int child = 2*i+1;
+			if (child>=size)
+				break;
+			if (child+1<size && priority[heap[child+1]]>priority[heap[child]])
+				child++;
+			if (priority[heap[child]]<=p)
+				break;
+			heap[i]=heap[child];
+			position[heap[i]]=i;
+			i=child;
+		}
+		heap[i]=id;
+		position[id]=i;
+	}
+}
@@ -0,0 +1,123 @@
+package pomdp;
+
+import java.util.Arrays;
+
+/**
+ *  The <tt>LAOStar</tt> class is a heuristic search solver (improved LAO*) rooted at the source belief.
+ *  Each iteration walks the best partial solution graph depth first from the root states,
+ *  following only the chosen action of every state, expands the unexpanded states it meets,
+ *  and backs up the visited states in postorder. It stops when the walk meets no unexpanded
+ *  state, no state changes its action and the largest utility change is at most epsilon.
+ *  States off the best solution graph are never expanded, so with an admissible {@link Heuristic}
+ *  only a fraction of the belief space is ever created.
+ */
+public class LAOStar implements Planner {
+
+	//fields
+	private final LazyBeliefGraph graph;
+	private final double epsilon;
+	private final int maxIterations;
+	private int [] visited = new int [16];	//iteration that last visited a state
+	private int [] stack = new int [16];
+
+	//constructors
+	public LAOStar(BeliefModel model, int source) {
+		this(model,source,new ShortestPathHeuristic(model));
+	}
+
+	public LAOStar(BeliefModel model, int source, Heuristic heuristic) {
+		this(model,source,heuristic,StateStore.onHeap(model.V()),0,Integer.MAX_VALUE);
+	}
+
+	public LAOStar(BeliefModel model, int source, Heuristic heuristic, StateStore store, double epsilon, int maxIterations) {
+		if (epsilon<0)
+			throw new IllegalArgumentException("Tolerance must be nonnegative");
+		if (maxIterations<1)
+			throw new IllegalArgumentException("Number of iterations must be positive");
+		this.graph = new LazyBeliefGraph(model,source,store,heuristic);
+		this.epsilon=epsilon;
+		this.maxIterations=maxIterations;
+	}
+
+	//explored belief space
+	public LazyBeliefGraph graph () {
+		return graph;
+	}
+
+	//searches until the best solution graph is fully expanded and converged
+	public SolveResult solve () {
+		int iterations=0;
+		long backups=0;
+		double residual;
+		int expanded;
+		boolean changed;	//some state switched action, its new outcomes were not walked yet
+		do {
+			iterations++;
+			expanded=0;
+			residual=0;
+			changed=false;
+			ensureCapacity();
+			int top=0;
+			int [] roots = graph.roots();
+			for (int i=roots.length-1; i>=0; i--)
+				top = push(top,roots[i]);
+			while (top>0) {
+				int x = stack[--top];
+				if (x<0) { //postorder
+					int action = graph.bestAction(~x);
+					residual = Math.max(residual,graph.backup(~x));
+					changed |= graph.bestAction(~x)!=action;
+					backups++;
+					continue;
+				}
+				int s = x;
+				if (visited[s]==iterations)
+					continue;
+				visited[s]=iterations;
+				if (graph.store().isTerminal(s))
+					continue;
+				top = push(top,~s);
+				if (!graph.isExpanded(s)) {
+					graph.expand(s);
+					ensureCapacity();
+					expanded++;
+					continue;
+				}
+				int a = graph.bestAction(s);
+				if (a<0)
+					continue;
+				for (int o=graph.firstOutcome(a); o<graph.endOutcome(a); o++) {
+					int next = graph.successor(o);
+					if (visited[next]!=iterations)
+						top = push(top,next);
+				}
+			}
+		} while ((expanded>0 || changed || residual>epsilon) && iterations<maxIterations);
+		return new SolveResult(iterations,backups,residual,expanded==0 && !changed && residual<=epsilon);
+	}
+
+	//pushes a state id (or ~id for its postorder backup)
+	private int push (int top, int x) {
+		if (top==stack.length)
+			stack = Arrays.copyOf(stack,top*2);
+		stack[top]=x;
+		return top+1;
+	}
+
+	//grows the visit marks to the number of created states
+	private void ensureCapacity () {
+		if (graph.states()>visited.length)
+			visited = Arrays.copyOf(visited,Math.max(graph.states(),visited.length*2));
+	}
+
+	//expected utility at the source
+	public double utility () {
+		return graph.rootUtility();
+	}
+
+	//vertex to move to from (vertex,key), -1 if the state was not solved
+	public int nextVertex (int vertex, BeliefKey key) {
+		int s = graph.find(vertex,key);
+		return (s<0) ? -1 : graph.nextVertex(s);
+	}
+}
@@ -0,0 +1,284 @@
+package pomdp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import graph.Edge;
+
+/**
+ *  The <tt>LazyBeliefGraph</tt> class is a belief space that is expanded on demand.
+ *  States are created in a {@link StateStore} when first reached, with the heuristic estimate
+ *  as their initial utility, and a state's actions and outcomes are generated by {@link BeliefModel}
+ *  only when it is expanded. Transitions are appended to growable primitive arrays, so the
+ *  rows of a state are contiguous like in {@link TransitionModel}, in expansion order.
+ *  The roots are the possible first observations at the source vertex.
+ *  Between two observations an optimal policy never repeats a vertex, and every observation
+ *  reveals a vertex, so a state that can reach a terminal state has a utility of at least
+ *  -V(V+1) times the largest finite edge weight. A backup below that floor marks a dead end (-infinity).
+ *  Infinite edges (those of a vertex blocked by {@link graph.EdgeWeightedGraph#updateEdgeWeight(int)})
+ *  are not actions.
+ */
+public class LazyBeliefGraph {
+
+	//fields
+	private final BeliefModel model;
+	private final StateStore store;
+	private final StateIndex index;
+	private final Heuristic heuristic;
+	private final int source;
+	private final int [] roots;
+	private final double [] rootProbabilities;
+	private final double floor;				//lowest finite utility
+	private int [] firstAction = new int [16];	//per state, -1 while unexpanded
+	private int [] endAction = new int [16];
+	private int actions;
+	private int [] target = new int [16];
+	private double [] reward = new double [16];
+	private int [] outcomeStart = new int [17];
+	private int outcomes;
+	private int [] successor = new int [16];
+	private double [] probability = new double [16];
+
+	//constructor
+	public LazyBeliefGraph(BeliefModel model, int source, StateStore store, Heuristic heuristic) {
+		this.model=model;
+		this.source=source;
+		this.store=store;
+		this.index=new StateIndex(store);
+		this.heuristic=heuristic;
+		this.floor = -(double)model.V()*(model.V()+1)*model.maxWeight();
+		ArrayList<BeliefKey> keys = model.initialKeys(source);
+		BeliefKey empty = new BeliefKey(model.V());
+		int [] roots = new int [keys.size()];
+		double [] rootProbabilities = new double [keys.size()];
+		int count=0;
+		double total=0;
+		for (BeliefKey key : keys) {
+			double p = model.probability(empty,key);
+			if (p>0) {
+				roots[count]=state(source,key);
+				rootProbabilities[count++]=p;
+				total+=p;
+			}
+		}
+		//the source itself has no police, condition on it
+		for (int i=0; i<count; i++)
+			rootProbabilities[i]/=total;
+		this.roots=Arrays.copyOf(roots,count);
+		this.rootProbabilities=Arrays.copyOf(rootProbabilities,count);
+	}
+
+	//belief model
+	public BeliefModel model () {
+		return model;
+	}
+
+	//state columns
+	public StateStore store () {
+		return store;
+	}
+
+	//source vertex
+	public int source () {
+		return source;
+	}
+
+	//number of states created so far
+	public int states () {
+		return store.size();
+	}
+
+	//root states, the possible first observations at the source
+	public int [] roots () {
+		return roots;
+	}
+
+	//probability of each root
+	public double [] rootProbabilities () {
+		return rootProbabilities;
+	}
+
+	//expected utility at the source
+	public double rootUtility () {
+		double utility=0;
+		for (int i=0; i<roots.length; i++)
+			utility+=rootProbabilities[i]*store.utility(roots[i]);
+		return utility;
+	}
+
+	//lowest utility of a state that can reach a terminal state
+	public double floor () {
+		return floor;
+	}
+
+	//returns the id of (vertex,key) or -1 if it was never reached
+	public int find (int vertex, BeliefKey key) {
+		return index.find(vertex,key);
+	}
+
+	//returns the id of (vertex,key), creating it with its heuristic utility if needed
+	public int state (int vertex, BeliefKey key) {
+		int size = store.size();
+		int id = index.add(vertex,key);
+		if (id==size) {
+			boolean terminal = model.isTerminal(vertex,key);
+			store.setTerminal(id,terminal);
+			store.setGoal(id,model.isGoal(vertex));
+			store.setUtility(id, terminal ? 0 : heuristic.utility(vertex,key));
+			if (id>=firstAction.length) {
+				firstAction = Arrays.copyOf(firstAction,id*2);
+				endAction = Arrays.copyOf(endAction,id*2);
+			}
+			firstAction[id]=-1;
+			endAction[id]=-1;
+		}
+		return id;
+	}
+
+	//true if the actions of s were generated
+	public boolean isExpanded (int s) {
+		return firstAction[s]>=0;
+	}
+
+	//generates the actions and outcomes of s, a non terminal state without actions is a dead end
+	public void expand (int s) {
+		if (isExpanded(s))
+			return;
+		int v = store.vertex(s);
+		BeliefKey key = store.key(s);
+		int first = actions;
+		if (!store.isTerminal(s)) {
+			boolean food = key.food(v)==1;
+			for (Edge e : model.graph().adj(v)) {
+				int w = e.other(v);
+				//an infinite edge leads to a blocked vertex
+				if (w==v || e.weight()==Double.POSITIVE_INFINITY)
+					continue;
+				ArrayList<BeliefKey> keys = model.outcomes(key,w);
+				if (keys.size()==0)
+					continue;
+				int a = actions;
+				ensureActions(a+1);
+				target[a]=w;
+				reward[a] = food ? -0.5*e.weight() : -e.weight();
+				for (BeliefKey next : keys) {
+					double p = model.probability(key,next);
+					if (p>0) {
+						ensureOutcomes(outcomes+1);
+						successor[outcomes]=state(w,next);
+						probability[outcomes++]=p;
+					}
+				}
+				outcomeStart[a+1]=outcomes;
+				actions++;
+			}
+			if (actions==first)
+				store.setUtility(s,Double.NEGATIVE_INFINITY);
+		}
+		firstAction[s]=first;
+		endAction[s]=actions;
+	}
+
+	//first action of s
+	public int firstAction (int s) {
+		return firstAction[s];
+	}
+
+	//one past the last action of s
+	public int endAction (int s) {
+		return endAction[s];
+	}
+
+	//vertex action a moves to
+	public int target (int a) {
+		return target[a];
+	}
+
+	//reward (minus cost) of action a
+	public double reward (int a) {
+		return reward[a];
+	}
+
+	//first outcome of action a
+	public int firstOutcome (int a) {
+		return outcomeStart[a];
+	}
+
+	//one past the last outcome of action a
+	public int endOutcome (int a) {
+		return outcomeStart[a+1];
+	}
+
+	//successor state of outcome o
+	public int successor (int o) {
+		return successor[o];
+	}
+
+	//probability of outcome o
+	public double probability (int o) {
+		return probability[o];
+	}
+
+	//expected utility of action a for the current utilities
+	public double q (int a) {
+		double utility=0;
+		double r = reward[a];
+		for (int o=outcomeStart[a]; o<outcomeStart[a+1]; o++)
+			utility+=probability[o]*(r+store.utility(successor[o]));
+		return utility;
+	}
+
+	//bellman backup of expanded state s, returns the utility change (dead ends drop to minus infinity)
+	public double backup (int s) {
+		if (store.isTerminal(s) || firstAction[s]==endAction[s])
+			return 0;
+		int best=-1;
+		double maxUtility = Double.NEGATIVE_INFINITY;
+		for (int a=firstAction[s]; a<endAction[s]; a++) {
+			double utility = q(a);
+			if (best<0 || utility>maxUtility) {
+				maxUtility=utility;
+				best=a;
+			}
+		}
+		if (maxUtility<floor)
+			maxUtility = Double.NEGATIVE_INFINITY;
+		double old = store.utility(s);
+		store.setUtility(s,maxUtility);
+		store.setAction(s,best-firstAction[s]);
+		if (old==maxUtility)
+			return 0;
+		return Math.abs(maxUtility-old);
+	}
+
+	//chosen action of s as an action index, -1 if none
+	public int bestAction (int s) {
+		int action = store.action(s);
+		if (action<0 || !isExpanded(s))
+			return -1;
+		return firstAction[s]+action;
+	}
+
+	//vertex the policy moves to from s, -1 if none
+	public int nextVertex (int s) {
+		int a = bestAction(s);
+		return (a<0) ? -1 : target[a];
+	}
+
+	private void ensureActions (int capacity) {
+		if (capacity<=target.length)
+			return;
+		int length = Math.max(capacity,target.length*2);
+		target = Arrays.copyOf(target,length);
+		reward = Arrays.copyOf(reward,length);
+		outcomeStart = Arrays.copyOf(outcomeStart,length+1);
+	}
+
+	private void ensureOutcomes (int capacity) {
+		if (capacity<=successor.length)
+			return;
+		int length = Math.max(capacity,successor.length*2);
+		successor = Arrays.copyOf(successor,length);
+		probability = Arrays.copyOf(probability,length);
+	}
+}
@@ -0,0 +1,98 @@
+package pomdp;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ *  The <tt>LegalStateIterator</tt> class streams the legal belief keys of a single vertex.
+ *  Only combinations satisfying the state invariants are generated:
+ *  the vertex and its neighbours are known, food & police are known together,
+ *  and the vertex itself has no police.
+ *  Each vertex is a digit of a mixed radix counter (2 options for the vertex itself,
+ *  4 for a neighbour, 5 for any other vertex), so no intermediate tables are built
+ *  and the number of vertices is not bounded by the int range.
+ */
+public class LegalStateIterator implements Iterator<BeliefKey> {
+
+	//fields
+	private final int V;
+	private final int vertex;
+	private final int [] radix;
+	private final int [] digits;
+	private boolean hasNext;
+
+	//constructor
+	public LegalStateIterator(BeliefModel model, int vertex) {
+		this.V=model.V();
+		this.vertex=vertex;
+		long [] neighbourhood = model.neighbourhood(vertex);
+		radix = new int [V];
+		for (int i=0; i<V; i++) {
+			if (i==vertex)
+				radix[i]=2;
+			else if ((neighbourhood[i>>>6] & (1L<<i))!=0)
+				radix[i]=4;
+			else
+				radix[i]=5;
+		}
+		digits = new int [V];
+		hasNext = true;
+	}
+
+	//number of legal keys of the vertex
+	public BigInteger count () {
+		BigInteger count = BigInteger.ONE;
+		for (int i=0; i<V; i++)
+			count = count.multiply(BigInteger.valueOf(radix[i]));
+		return count;
+	}
+
+	public boolean hasNext () {
+		return hasNext;
+	}
+
+	public BeliefKey next () {
+		if (!hasNext)
+			throw new NoSuchElementException();
+		BeliefKey key = build();
+		//advance the counter
+		int i=0;
+		while (i<V && ++digits[i]==radix[i]) {
+			digits[i]=0;
+			i++;
+		}
+		if (i==V)
+			hasNext=false;
+		return key;
+	}
+
+	//packs the current digits
+	private BeliefKey build () {
+		int words = BeliefKey.words(V);
+		long [] bits = new long [3*words];
+		for (int i=0; i<V; i++) {
+			int combination;
+			if (radix[i]==5) {
+				//digit 0 is unknown
+				if (digits[i]==0)
+					continue;
+				combination = digits[i]-1;
+			}
+			else
+				combination = digits[i];
+			int w = i>>>6;
+			long bit = 1L<<i;
+			bits[w]|=bit;
+			if ((combination&1)!=0)
+				bits[words+w]|=bit;
+			if ((combination&2)!=0)
+				bits[2*words+w]|=bit;
+		}
+		return new BeliefKey(V,bits);
+	}
+
+	public void remove () {
+		throw new UnsupportedOperationException();
+	}
+}
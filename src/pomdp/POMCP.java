@@ -0,0 +1,262 @@
+package pomdp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import graph.Edge;
+
+/**
+ *  The <tt>POMCP</tt> class is an online Monte-Carlo tree search planner (POMCP-style) that needs
+ *  no enumeration of the belief space. Every decision searches from the current (vertex,key):
+ *  each simulation samples the unknown food and police of every vertex from the
+ *  {@link env.VertexInfo} probabilities, walks the tree choosing moves by UCT, adds the first
+ *  new belief it reaches and finishes with a rollout that moves to the neighbour closest to the
+ *  goal ({@link ShortestPathHeuristic}). Tree nodes are beliefs, so histories that reveal the same
+ *  knowledge at the same vertex share statistics.
+ *  <p>
+ *  Simulations stop at the simulation budget of the decision, or earlier at its time limit if one
+ *  is set. The worker threads live as long as the planner (see {@link #shutdown}). With several threads each
+ *  one grows its own tree from its own random stream (root parallelization) and the move visited
+ *  most over all trees is chosen, so a simulation budget gives the same answer for a fixed seed.
+ *  Trajectories are cut after V(V+1) moves, longer than any optimal one, and a cut or stuck
+ *  trajectory scores the floor -V(V+1) times the largest finite edge weight.
+ */
+public class POMCP implements Planner {
+
+	//fields
+	public static final int DEFAULT_SIMULATIONS = 10000;
+	private final BeliefModel model;
+	private final ShortestPathHeuristic heuristic;
+	private final int threads;
+	private final long timeLimit;		//nanoseconds per decision, Long.MAX_VALUE if none
+	private final int simulations;		//per decision, over all threads
+	private final double exploration;	//UCT constant, in units of the estimated cost
+	private final long seed;
+	private final int maxDepth;
+	private final double floor;
+	private final Parallel parallel;	//workers of every decision, until shutdown
+
+	//constructors, by default every decision runs a fixed number of simulations without a time limit
+	public POMCP(BeliefModel model) {
+		this(model,Runtime.getRuntime().availableProcessors(),0,DEFAULT_SIMULATIONS,1,0);
+	}
+
+	//timeLimitMillis 0 puts no time limit on a decision
+	public POMCP(BeliefModel model, int threads, long timeLimitMillis, int simulations, double exploration, long seed) {
+		if (threads<1)
+			throw new IllegalArgumentException("Number of threads must be positive");
+		if (timeLimitMillis<0)
+			throw new IllegalArgumentException("Time limit must be nonnegative");
+		if (simulations<1)
+			throw new IllegalArgumentException("Number of simulations must be positive");
+		if (exploration<0)
+			throw new IllegalArgumentException("Exploration constant must be nonnegative");
+		this.model=model;
+		this.heuristic = new ShortestPathHeuristic(model);
+		this.threads=threads;
+		this.timeLimit = (timeLimitMillis==0 || timeLimitMillis>=Long.MAX_VALUE/1000000) ? Long.MAX_VALUE : timeLimitMillis*1000000;
+		this.simulations=simulations;
+		this.exploration=exploration;
+		this.seed=seed;
+		this.maxDepth = model.V()*(model.V()+1);
+		this.floor = -(double)maxDepth*model.maxWeight();
+		this.parallel = new Parallel(threads);
+	}
+
+	//stops the worker threads, the planner can not be used afterwards
+	public void shutdown () {
+		parallel.shutdown();
+	}
+
+	public int nextVertex(final int vertex, final BeliefKey key) {
+		if (model.isTerminal(vertex,key))
+			return -1;
+		final long start = System.nanoTime();
+		//the estimate is infinite where the heuristic finds no route, the floor bounds the cost instead
+		double estimate = heuristic.utility(vertex,key);
+		final double scale = Math.max(1,-Math.max(estimate,floor));
+		final Search [] searches = new Search [threads];
+		parallel.forEach(threads,1,new Parallel.Block() {
+			public void run(int from, int to) {
+				for (int t=from; t<to; t++) {
+					int budget = simulations/threads + (t<simulations%threads ? 1 : 0);
+					searches[t] = new Search(new Random(seed+t*0x9E3779B97F4A7C15L),exploration*scale);
+					searches[t].search(vertex,key,budget,start);
+				}
+			}
+		});
+
+		//most visited move over all trees, ties to the better mean
+		int V = model.V();
+		long [] visits = new long [V];
+		double [] value = new double [V];
+		for (Search search : searches) {
+			for (int a=search.firstAction[0]; a<search.endAction[0]; a++) {
+				int w = search.target[a];
+				visits[w]+=search.actionVisits[a];
+				value[w]+=search.actionVisits[a]*search.actionValue[a];
+			}
+		}
+		int best=-1;
+		for (int w=0; w<V; w++) {
+			if (visits[w]==0)
+				continue;
+			if (best<0 || visits[w]>visits[best] || (visits[w]==visits[best] && value[w]/visits[w]>value[best]/visits[best]))
+				best=w;
+		}
+		//no simulation finished in time, fall back to the rollout move
+		return (best<0) ? rolloutMove(vertex,key) : best;
+	}
+
+	//move of the rollout policy: the neighbour with the best step cost plus heuristic, -1 if stuck
+	private int rolloutMove (int v, BeliefKey key) {
+		boolean food = key.food(v)==1;
+		int best=-1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (Edge e : model.graph().adj(v)) {
+			int w = e.other(v);
+			//an infinite edge leads to a blocked vertex
+			if (w==v || key.police(w)==1 || e.weight()==Double.POSITIVE_INFINITY)
+				continue;
+			double value = (food ? -0.5*e.weight() : -e.weight())+heuristic.utility(w,key);
+			if (best<0 || value>bestValue) {
+				bestValue=value;
+				best=w;
+			}
+		}
+		return best;
+	}
+
+	//one search tree, grown by a single thread
+	private final class Search {
+
+		//fields
+		private final Random random;
+		private final double c;
+		private final StateIndex index = new StateIndex(StateStore.onHeap(model.V()));
+		private final boolean [] food = new boolean [model.V()];	//sampled hidden locations
+		private final boolean [] police = new boolean [model.V()];
+		private int [] visits = new int [16];		//per node
+		private int [] firstAction = new int [16];
+		private int [] endAction = new int [16];
+		private int actions;
+		private int [] target = new int [16];		//per action
+		private double [] reward = new double [16];
+		private int [] actionVisits = new int [16];
+		private double [] actionValue = new double [16];
+
+		Search(Random random, double c) {
+			this.random=random;
+			this.c=c;
+		}
+
+		//runs simulations from (v,key) until the budget or the time limit counted from start
+		void search (int v, BeliefKey key, int budget, long start) {
+			node(v,key);
+			for (int i=0; i<budget && System.nanoTime()-start<timeLimit; i++) {
+				for (int u=0; u<model.V(); u++) {
+					if (key.known(u)) {
+						food[u] = key.food(u)==1;
+						police[u] = key.police(u)==1;
+					}
+					else {
+						food[u] = random.nextDouble()<model.foodProbability(u);
+						police[u] = random.nextDouble()<model.policeProbability(u);
+					}
+				}
+				simulate(v,key,0);
+			}
+		}
+
+		//utility of one simulated trajectory from (v,key), updating the tree on the way back
+		private double simulate (int v, BeliefKey key, int depth) {
+			if (model.isTerminal(v,key))
+				return 0;
+			if (depth>=maxDepth)
+				return floor;
+			int s = index.find(v,key);
+			if (s<0) {
+				node(v,key);
+				return rollout(v,key,depth);
+			}
+			if (firstAction[s]==endAction[s])
+				return floor;
+			int a = select(s);
+			double utility = reward[a]+simulate(target[a],observe(key,target[a]),depth+1);
+			visits[s]++;
+			actionVisits[a]++;
+			actionValue[a]+=(utility-actionValue[a])/actionVisits[a];
+			return utility;
+		}
+
+		//UCT choice among the moves of node s, untried moves first
+		private int select (int s) {
+			int best=-1;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			double log = Math.log(Math.max(1,visits[s]));
+			for (int a=firstAction[s]; a<endAction[s]; a++) {
+				if (actionVisits[a]==0)
+					return a;
+				double value = actionValue[a]+c*Math.sqrt(log/actionVisits[a]);
+				if (value>bestValue) {
+					bestValue=value;
+					best=a;
+				}
+			}
+			return best;
+		}
+
+		//follows the rollout policy until a terminal state, the depth limit or a dead end
+		private double rollout (int v, BeliefKey key, int depth) {
+			double utility=0;
+			for (; depth<maxDepth; depth++) {
+				if (model.isTerminal(v,key))
+					return utility;
+				int w = rolloutMove(v,key);
+				if (w<0)
+					break;
+				double weight = model.graph().getWeight(v,w);
+				utility+= (key.food(v)==1) ? -0.5*weight : -weight;
+				key = observe(key,w);
+				v=w;
+			}
+			return utility+floor;
+		}
+
+		//key after moving to w, revealing the sampled locations around it
+		private BeliefKey observe (BeliefKey key, int w) {
+			long [] mask = model.neighbourhood(w);
+			for (int u=0; u<model.V(); u++) {
+				if ((mask[u>>>6]&(1L<<(u&63)))!=0 && !key.known(u))
+					key = key.reveal(u,food[u],police[u]);
+			}
+			return key;
+		}
+
+		//adds node (v,key) with its legal moves
+		private void node (int v, BeliefKey key) {
+			int s = index.add(v,key);
+			if (s==visits.length) {
+				visits = Arrays.copyOf(visits,s*2);
+				firstAction = Arrays.copyOf(firstAction,s*2);
+				endAction = Arrays.copyOf(endAction,s*2);
+			}
+			firstAction[s]=actions;
+			boolean food = key.food(v)==1;
+			for (Edge e : model.graph().adj(v)) {
+				int w = e.other(v);
+				if (w==v || key.police(w)==1 || e.weight()==Double.POSITIVE_INFINITY)
+					continue;
+				if (actions==target.length) {
+					target = Arrays.copyOf(target,actions*2);
+					reward = Arrays.copyOf(reward,actions*2);
+					actionVisits = Arrays.copyOf(actionVisits,actions*2);
+					actionValue = Arrays.copyOf(actionValue,actions*2);
+				}
+				target[actions]=w;
+				reward[actions++] = food ? -0.5*e.weight() : -e.weight();
+			}
+			endAction[s]=actions;
+		}
+	}
+}
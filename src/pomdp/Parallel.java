@@ -0,0 +1,79 @@
+package pomdp;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ *  The <tt>Parallel</tt> class runs index ranges on a fixed number of worker threads.
+ *  A range [0,n) is split into contiguous blocks, each block runs on one worker,
+ *  and the call returns when every block is done. With a single thread the blocks
+ *  run in order on the calling thread, so results never depend on the thread count
+ *  as long as blocks write disjoint data.
+ */
+public class Parallel {
+
+	//body of a parallel loop over the block [from,to)
+	public interface Block {
+		void run(int from, int to);
+	}
+
+	//fields
+	private final int threads;
+	private final ForkJoinPool pool;
+
+	//constructor
+	public Parallel(int threads) {
+		if (threads<1)
+			throw new IllegalArgumentException("Number of threads must be positive");
+		this.threads=threads;
+		this.pool = (threads==1) ? null : new ForkJoinPool(threads);
+	}
+
+	//number of worker threads
+	public int threads () {
+		return threads;
+	}
+
+	//runs body over [0,n) split into blocks of at least minBlock indices
+	public void forEach (int n, int minBlock, final Block body) {
+		int blocks = Math.min(threads*4, Math.max(1,n/Math.max(1,minBlock)));
+		if (pool==null || blocks==1) {
+			body.run(0,n);
+			return;
+		}
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int b=0; b<blocks; b++) {
+			final int from = (int)((long)n*b/blocks);
+			final int to = (int)((long)n*(b+1)/blocks);
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					body.run(from,to);
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Void> task : pool.invokeAll(tasks))
+				task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for workers",e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	//stops the worker threads
+	public void shutdown () {
+		if (pool!=null)
+			pool.shutdown();
+	}
+}
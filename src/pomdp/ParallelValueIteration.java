@@ -0,0 +1,104 @@
+package pomdp;
+
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ *  The <tt>ParallelValueIteration</tt> class is a synchronous (Jacobi) value iteration solver.
+ *  Each sweep computes the backups of every state from the utilities of the previous sweep, kept
+ *  in one scratch array, into the utility column of the store, with the states partitioned into
+ *  blocks across worker threads, and then refreshes the scratch array from the store.
+ *  Since a sweep only reads the previous utilities the result does not depend on the thread count.
+ *  Utilities only ever increase, and it stops once the largest residual of a sweep is at most
+ *  epsilon (by default 0, no utility changed) or after maxIterations sweeps.
+ */
+public class ParallelValueIteration implements Solver {
+
+	//fields
+	private static final DoubleBinaryOperator MAX = new DoubleBinaryOperator() {
+		public double applyAsDouble(double left, double right) {
+			return Math.max(left,right);
+		}
+	};
+	private final int threads;
+	private final double epsilon;
+	private final int maxIterations;
+
+	//constructors
+	public ParallelValueIteration() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public ParallelValueIteration(int threads) {
+		this(threads,0,Integer.MAX_VALUE);
+	}
+
+	public ParallelValueIteration(int threads, double epsilon, int maxIterations) {
+		if (epsilon<0)
+			throw new IllegalArgumentException("Tolerance must be nonnegative");
+		if (maxIterations<1)
+			throw new IllegalArgumentException("Number of iterations must be positive");
+		this.threads=threads;
+		this.epsilon=epsilon;
+		this.maxIterations=maxIterations;
+	}
+
+	public SolveResult solve(final TransitionModel transitions, final StateStore store) {
+		int n = transitions.states();
+		final double [] previous = new double [n]; //utilities of the last sweep
+		for (int s=0; s<n; s++)
+			previous[s]=store.utility(s);
+		final DoubleAccumulator sweepResidual = new DoubleAccumulator(MAX,0);
+		Parallel parallel = new Parallel(threads);
+		int iterations=0;
+		double residual;
+		try {
+			do {
+				sweepResidual.reset();
+				parallel.forEach(n,1024,new Parallel.Block() {
+					public void run(int first, int end) {
+						double blockResidual=0;
+						for (int s=first; s<end; s++)
+							blockResidual = Math.max(blockResidual,backup(transitions,s,previous,store));
+						sweepResidual.accumulate(blockResidual);
+					}
+				});
+				iterations++;
+				residual = sweepResidual.get();
+				if (residual>0) {
+					parallel.forEach(n,1024,new Parallel.Block() {
+						public void run(int first, int end) {
+							for (int s=first; s<end; s++)
+								previous[s]=store.utility(s);
+						}
+					});
+				}
+			} while (residual>epsilon && iterations<maxIterations);
+		} finally {
+			parallel.shutdown();
+		}
+		return new SolveResult(iterations,(long)iterations*n,residual,residual<=epsilon);
+	}
+
+	//bellman backup of state s from the utilities of the last sweep into store, returns the utility increase
+	private static double backup (TransitionModel transitions, int s, double [] previous, StateStore store) {
+		if (transitions.isTerminal(s))
+			return 0;
+		double maxUtility = previous[s];
+		int first = transitions.firstAction(s);
+		int end = transitions.endAction(s);
+		int bestAction = -1;
+		for (int a=first; a<end; a++) {
+			double utility = transitions.q(a,previous);
+			if (utility>maxUtility) {
+				maxUtility=utility;
+				bestAction=a;
+			}
+		}
+		if (bestAction<0)
+			return 0;
+		store.setUtility(s,maxUtility);
+		store.setAction(s,bestAction-first);
+		return maxUtility-previous[s];
+	}
+}
@@ -0,0 +1,119 @@
+package pomdp;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ *  The <tt>Plan</tt> class is the trajectory of one execution of a policy on a realized
+ *  environment: the vertices and states visited from the source, the cost of each move, the
+ *  total cost and how the execution ended. A plan is reused by clearing it, so executing and
+ *  scoring many runs only grows its arrays up to the longest trajectory.
+ *  Position 0 is the source, position i (1 to steps()) is reached by the i-th move.
+ */
+public class Plan {
+
+	//how an execution ended
+	public enum Outcome {
+		GOAL,		//reached the goal
+		STUCK,		//no move left, e.g. police was met or the goal can not be reached
+		STEP_LIMIT	//stopped after the step limit, the policy moves in a cycle
+	}
+
+	//fields
+	private int [] vertices = new int [16];
+	private int [] states = new int [16];	//state id per position, -1 if the belief space does not hold it
+	private double [] stepCosts = new double [16];
+	private int size;
+	private double totalCost;
+	private Outcome outcome;
+
+	//empties the plan for the next execution
+	public void clear () {
+		size=0;
+		totalCost=0;
+		outcome=null;
+	}
+
+	//starts the trajectory at the source
+	void start (int vertex, int state) {
+		clear();
+		append(vertex,state,0);
+	}
+
+	//appends a move to vertex, reaching state, that cost cost
+	void step (int vertex, int state, double cost) {
+		append(vertex,state,cost);
+		totalCost+=cost;
+	}
+
+	//ends the trajectory
+	void finish (Outcome outcome) {
+		this.outcome=outcome;
+	}
+
+	private void append (int vertex, int state, double cost) {
+		if (size==vertices.length) {
+			vertices = Arrays.copyOf(vertices,2*size);
+			states = Arrays.copyOf(states,2*size);
+			stepCosts = Arrays.copyOf(stepCosts,2*size);
+		}
+		vertices[size]=vertex;
+		states[size]=state;
+		stepCosts[size]=cost;
+		size++;
+	}
+
+	//number of moves
+	public int steps () {
+		return size-1;
+	}
+
+	//vertex at position i
+	public int vertex (int i) {
+		return vertices[i];
+	}
+
+	//state id at position i, -1 if the belief space does not hold it
+	public int state (int i) {
+		return states[i];
+	}
+
+	//cost of the move reaching position i, 0 for the source
+	public double stepCost (int i) {
+		return stepCosts[i];
+	}
+
+	//sum of the costs of every move
+	public double totalCost () {
+		return totalCost;
+	}
+
+	//how the execution ended, null while it runs
+	public Outcome outcome () {
+		return outcome;
+	}
+
+	//true if the execution reached the goal
+	public boolean reachedGoal () {
+		return outcome==Outcome.GOAL;
+	}
+
+	//prints the positions, described by states (one per position), and how the execution ended to out
+	void print (String [] states, PrintStream out) {
+		for (int i=0; i<size; i++) {
+			if (i==0)
+				out.println("starting state: "+states[i]);
+			else {
+				out.println("traversing to v"+vertices[i]+":");
+				out.println((i==1) ? states[i] : "current state: "+states[i]);
+			}
+		}
+		if (outcome==Outcome.GOAL)
+			out.println("Reached to goal!");
+		else if (outcome==Outcome.STUCK)
+			out.println("No avalible transitions, agent has no moves!");
+		else
+			out.println("Step limit reached, agent did not reach the goal!");
+		out.println("----------------------------------------------------");
+	}
+}
@@ -0,0 +1,11 @@
+package pomdp;
+
+/**
+ *  The <tt>Planner</tt> interface chooses the agent's next move from what it currently knows.
+ *  Offline solvers answer from their computed policy, online planners search at every call.
+ */
+public interface Planner {
+
+	//vertex to move to from (vertex,key), -1 if there is no move
+	int nextVertex(int vertex, BeliefKey key);
+}
@@ -0,0 +1,458 @@
+package pomdp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import graph.Edge;
+
+/**
+ *  The <tt>PointBasedValueIteration</tt> class approximates the utility over the factored belief
+ *  simplex (Perseus-style point-based value iteration), so its cost depends on the number of
+ *  sampled beliefs rather than on the 9^V discrete belief states.
+ *  <p>
+ *  A belief at vertex v is the vector x = (1, food probabilities, police probabilities): 0 or 1
+ *  where a vertex is known, its {@link env.VertexInfo} probability where it is not.
+ *  Beliefs at the same vertex that know the same vertices form a class, and the utility of a class
+ *  is the maximum of x over its alpha vectors of length 1+2V, stored back to back in one primitive
+ *  array per class. A point backup takes the best action at a sampled belief and builds the tangent
+ *  of its expected utility there. The tangent is exact at the belief and linear in the known values
+ *  (a known police at the target pushes it below the floor), so it bounds the backup of every
+ *  belief of the class; a belief whose class was never sampled borrows the best vector of any
+ *  class at its vertex.
+ *  <p>
+ *  Beliefs are sampled by random walks from the source until the point budget is reached.
+ *  Every iteration backs up random points until no point's utility has decreased,
+ *  and the iterations stop when the largest improvement is at most epsilon.
+ *  All vectors start at the floor -V(V+1) times the largest finite edge weight, and a utility that
+ *  stays there (up to rounding) is reported as minus infinity: the goal was never shown to be reachable.
+ *  Where the exact utility is minus infinity only for some outcomes, the floor is mixed into the
+ *  expectation instead, so such a utility is finite, neither a bound on the exact one nor monotone
+ *  in the number of points.
+ */
+public class PointBasedValueIteration implements Planner {
+
+	//fields
+	private final BeliefModel model;
+	private final int source;
+	private final int budget;
+	private final double epsilon;
+	private final int maxIterations;
+	private final Random random;
+	private final int V;
+	private final int D;							//vector length, 1+2V
+	private final double floor;
+	private final StateStore points;
+	private final StateIndex pointIndex;
+	private final StateStore classes;				//(vertex, known vertices)
+	private final StateIndex classIndex;
+	private double [] features = new double [0];	//per point, back to back
+	private int [] pointClass = new int [16];
+	private int [] vertexStart;						//classes grouped by vertex
+	private int [] byVertex;
+	private double [][] vectors = new double [0][];	//per class, alpha vectors back to back
+	private int [][] actions = new int [0][];		//per class, target vertex of every vector
+	private int [] count = new int [0];				//per class, number of vectors
+	private int foundClass, foundVector;			//set by evaluate
+	private final double [] x;						//scratch
+	private final double [] b;
+	private final double [] alpha;
+	private final double [] gradient;
+	private final boolean [] revealed;
+
+	//constructors
+	public PointBasedValueIteration(BeliefModel model, int source, int points) {
+		this(model,source,points,1e-9,1000,0);
+	}
+
+	public PointBasedValueIteration(BeliefModel model, int source, int points, double epsilon, int maxIterations, long seed) {
+		if (points<1)
+			throw new IllegalArgumentException("Number of points must be positive");
+		if (epsilon<0)
+			throw new IllegalArgumentException("Tolerance must be nonnegative");
+		if (maxIterations<1)
+			throw new IllegalArgumentException("Number of iterations must be positive");
+		this.model=model;
+		this.source=source;
+		this.budget=points;
+		this.epsilon=epsilon;
+		this.maxIterations=maxIterations;
+		this.random = new Random(seed);
+		this.V = model.V();
+		this.D = 1+2*V;
+		this.floor = -(double)V*(V+1)*model.maxWeight();
+		this.points = StateStore.onHeap(V);
+		this.pointIndex = new StateIndex(this.points);
+		this.classes = StateStore.onHeap(V);
+		this.classIndex = new StateIndex(classes);
+		x = new double [D];
+		b = new double [D];
+		alpha = new double [D];
+		gradient = new double [D];
+		revealed = new boolean [V];
+	}
+
+	//number of sampled beliefs
+	public int points () {
+		return points.size();
+	}
+
+	//number of alpha vectors
+	public int vectors () {
+		int vectors=0;
+		for (int c=0; c<count.length; c++)
+			vectors+=count[c];
+		return vectors;
+	}
+
+	//samples the beliefs and iterates until the improvement is at most epsilon
+	public SolveResult solve () {
+		samplePoints();
+		int n = points.size();
+		int classCount = classes.size();
+		//points grouped by class
+		int [] start = new int [classCount+1];
+		for (int s=0; s<n; s++)
+			start[pointClass[s]+1]++;
+		for (int c=0; c<classCount; c++)
+			start[c+1]+=start[c];
+		int [] byClass = new int [n];
+		int [] fill = Arrays.copyOf(start,classCount);
+		for (int s=0; s<n; s++)
+			byClass[fill[pointClass[s]]++]=s;
+
+		double [] current = new double [n];
+		for (int s=0; s<n; s++)
+			current[s] = value(pointClass[s],features,s*D);
+		double [] next = new double [n];
+		int [] todo = new int [n];
+		int [] position = new int [n];	//index in todo, -1 once covered
+		long backups=0;
+		int iterations=0;
+		double residual;
+		do {
+			double [][] newVectors = new double [classCount][];
+			int [][] newActions = new int [classCount][];
+			int [] newCount = new int [classCount];
+			for (int c=0; c<classCount; c++) {
+				newVectors[c] = new double [D];
+				newActions[c] = new int [1];
+			}
+			Arrays.fill(next,Double.NEGATIVE_INFINITY);
+			for (int s=0; s<n; s++) {
+				todo[s]=s;
+				position[s]=s;
+			}
+			int remaining=n;
+			while (remaining>0) {
+				int s = todo[random.nextInt(remaining)];
+				int c = pointClass[s];
+				int action = backup(points.vertex(s),points.key(s),alpha);
+				backups++;
+				double [] vector;
+				if (action>=0 && dot(alpha,0,features,s*D)>=current[s])
+					vector = alpha;
+				else {
+					//keep the old vector that is best at s, it covers every point it is best for
+					int best = best(c,features,s*D);
+					vector = Arrays.copyOfRange(vectors[c],best*D,best*D+D);
+					action = actions[c][best];
+				}
+				//add the vector and drop the points of the class it covers
+				if (newCount[c]==newActions[c].length) {
+					newVectors[c] = Arrays.copyOf(newVectors[c],newCount[c]*2*D);
+					newActions[c] = Arrays.copyOf(newActions[c],newCount[c]*2);
+				}
+				System.arraycopy(vector,0,newVectors[c],newCount[c]*D,D);
+				newActions[c][newCount[c]++]=action;
+				for (int i=start[c]; i<start[c+1]; i++) {
+					int t = byClass[i];
+					next[t] = Math.max(next[t],dot(vector,0,features,t*D));
+					if (position[t]>=0 && next[t]>=current[t])
+						remaining = remove(t,todo,position,remaining);
+				}
+				if (position[s]>=0)
+					remaining = remove(s,todo,position,remaining);
+			}
+			vectors=newVectors;
+			actions=newActions;
+			count=newCount;
+			residual=0;
+			for (int s=0; s<n; s++) {
+				//equal values are skipped, the difference of two infinite ones is not a number
+				if (next[s]!=current[s])
+					residual = Math.max(residual,next[s]-current[s]);
+				current[s]=next[s];
+			}
+			iterations++;
+		} while (residual>epsilon && iterations<maxIterations);
+		return new SolveResult(iterations,backups,residual,residual<=epsilon);
+	}
+
+	//expected utility at the source
+	public double utility () {
+		BeliefKey empty = new BeliefKey(V);
+		double utility=0, total=0;
+		for (BeliefKey key : model.initialKeys(source)) {
+			double p = model.probability(empty,key);
+			if (p>0) {
+				utility+=p*utility(source,key);
+				total+=p;
+			}
+		}
+		//the source itself has no police, condition on it
+		return utility/total;
+	}
+
+	//approximate utility of belief (vertex,key), minus infinity if it stayed at the floor
+	public double utility (int vertex, BeliefKey key) {
+		if (model.isTerminal(vertex,key))
+			return 0;
+		features(key,x,0);
+		double utility = evaluate(vertex,key,x);
+		return (floor<0 && utility<=floor*(1-1e-9)) ? Double.NEGATIVE_INFINITY : utility;
+	}
+
+	//vertex with the best one step lookahead from (vertex,key), -1 if none
+	public int nextVertex (int vertex, BeliefKey key) {
+		if (model.isTerminal(vertex,key))
+			return -1;
+		return backup(vertex,key,new double [D]);
+	}
+
+	//random walks from the source until the budget is reached or no new belief turns up
+	private void samplePoints () {
+		if (points.size()>0)
+			return;
+		ArrayList<BeliefKey> roots = new ArrayList<BeliefKey>();
+		ArrayList<Double> rootProbabilities = new ArrayList<Double>();
+		BeliefKey empty = new BeliefKey(V);
+		double total=0;
+		for (BeliefKey key : model.initialKeys(source)) {
+			double p = model.probability(empty,key);
+			if (p>0) {
+				roots.add(key);
+				rootProbabilities.add(p);
+				total+=p;
+			}
+		}
+		int maxDepth = V*(V+1);
+		int stale=0;
+		int [] targets = new int [V];
+		while (points.size()<budget && stale<1000) {
+			int size = points.size();
+			double sample = random.nextDouble()*total;
+			int r=0;
+			while (r<roots.size()-1 && (sample-=rootProbabilities.get(r))>=0)
+				r++;
+			int v = source;
+			BeliefKey key = roots.get(r);
+			for (int depth=0; depth<maxDepth && points.size()<budget && !model.isTerminal(v,key); depth++) {
+				addPoint(v,key);
+				//random move
+				int moves=0;
+				for (Edge e : model.graph().adj(v)) {
+					int w = e.other(v);
+					if (w!=v && key.police(w)!=1 && e.weight()<Double.POSITIVE_INFINITY)
+						targets[moves++]=w;
+				}
+				if (moves==0)
+					break;
+				int w = targets[random.nextInt(moves)];
+				ArrayList<BeliefKey> outcomes = model.outcomes(key,w);
+				double u = random.nextDouble();
+				BeliefKey next = outcomes.get(outcomes.size()-1);
+				for (BeliefKey outcome : outcomes) {
+					u-=model.probability(key,outcome);
+					if (u<0) {
+						next=outcome;
+						break;
+					}
+				}
+				v=w;
+				key=next;
+			}
+			stale = (points.size()==size) ? stale+1 : 0;
+		}
+
+		//every class starts with the floor vector
+		int classCount = classes.size();
+		vectors = new double [classCount][];
+		actions = new int [classCount][];
+		count = new int [classCount];
+		vertexStart = new int [V+1];
+		for (int c=0; c<classCount; c++) {
+			vectors[c] = new double [D];
+			vectors[c][0]=floor;
+			actions[c] = new int [] {-1};
+			count[c]=1;
+			vertexStart[classes.vertex(c)+1]++;
+		}
+		for (int v=0; v<V; v++)
+			vertexStart[v+1]+=vertexStart[v];
+		byVertex = new int [classCount];
+		int [] fill = Arrays.copyOf(vertexStart,V);
+		for (int c=0; c<classCount; c++)
+			byVertex[fill[classes.vertex(c)]++]=c;
+	}
+
+	//adds (v,key) to the points and its class to the classes
+	private void addPoint (int v, BeliefKey key) {
+		int size = points.size();
+		int id = pointIndex.add(v,key);
+		if (id<size)
+			return;
+		if ((id+1)*D>features.length)
+			features = Arrays.copyOf(features,Math.max((id+1)*D,features.length*2));
+		features(key,features,id*D);
+		if (id==pointClass.length)
+			pointClass = Arrays.copyOf(pointClass,id*2);
+		pointClass[id] = classIndex.add(v,key.knowledge());
+	}
+
+	//point backup of (v,key): writes the tangent of the best action to vector, returns its target or -1
+	private int backup (int v, BeliefKey key, double [] vector) {
+		features(key,b,0);
+		boolean food = key.food(v)==1;
+		int best=-1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (Edge e : model.graph().adj(v)) {
+			int w = e.other(v);
+			//an infinite edge leads to a blocked vertex
+			if (w==v || e.weight()==Double.POSITIVE_INFINITY)
+				continue;
+			ArrayList<BeliefKey> outcomes = model.outcomes(key,w);
+			if (outcomes.size()==0)
+				continue;
+			for (int u=0; u<V; u++)
+				revealed[u] = !key.known(u) && inNeighbourhood(w,u);
+			double value = food ? -0.5*e.weight() : -e.weight();
+			Arrays.fill(gradient,0);
+			//food at v halves the cost, police at w rules the move out
+			gradient[1+v]=0.5*e.weight();
+			gradient[1+V+w]=floor;
+			for (BeliefKey next : outcomes) {
+				double p = model.probability(key,next);
+				if (p<=0)
+					continue;
+				double outcomeValue=0;
+				double [] outcomeVector=null;
+				int from=0;
+				if (!model.isTerminal(w,next)) {
+					features(next,x,0);
+					outcomeValue = evaluate(w,next,x);
+					if (foundClass>=0) {
+						outcomeVector = vectors[foundClass];
+						from = foundVector*D;
+					}
+				}
+				value+=p*outcomeValue;
+				for (int u=0; u<V; u++) {
+					if (revealed[u]) {
+						//revealed vertices enter through the outcome probability
+						double f = model.foodProbability(u);
+						double q = model.policeProbability(u);
+						gradient[1+u]+= (next.food(u)==1) ? p/f*outcomeValue : -p/(1-f)*outcomeValue;
+						gradient[1+V+u]+= (next.police(u)==1) ? p/q*outcomeValue : -p/(1-q)*outcomeValue;
+					}
+					else if (outcomeVector!=null) {
+						//the others pass through the outcome vector linearly
+						gradient[1+u]+=p*outcomeVector[from+1+u];
+						gradient[1+V+u]+=p*outcomeVector[from+1+V+u];
+					}
+				}
+			}
+			if (value>bestValue) {
+				bestValue=value;
+				best=w;
+				vector[0]=value;
+				for (int c=1; c<D; c++) {
+					vector[c]=gradient[c];
+					vector[0]-=gradient[c]*b[c];
+				}
+			}
+		}
+		return best;
+	}
+
+	//utility of features f of belief (v,key), sets foundClass and foundVector (-1 if only the floor applies)
+	private double evaluate (int v, BeliefKey key, double [] f) {
+		foundClass = (vertexStart==null) ? -1 : classIndex.find(v,key.knowledge());
+		if (foundClass>=0) {
+			foundVector = best(foundClass,f,0);
+			return dot(vectors[foundClass],foundVector*D,f,0);
+		}
+		//class never sampled, borrow from the other classes at v
+		double bestValue=floor;
+		if (vertexStart!=null) {
+			for (int i=vertexStart[v]; i<vertexStart[v+1]; i++) {
+				int c = byVertex[i];
+				int j = best(c,f,0);
+				double value = dot(vectors[c],j*D,f,0);
+				if (value>bestValue) {
+					bestValue=value;
+					foundClass=c;
+					foundVector=j;
+				}
+			}
+		}
+		return bestValue;
+	}
+
+	//true if u is w or a neighbour of w
+	private boolean inNeighbourhood (int w, int u) {
+		long [] mask = model.neighbourhood(w);
+		return (mask[u>>>6]&(1L<<(u&63)))!=0;
+	}
+
+	//belief features of key into f at offset
+	private void features (BeliefKey key, double [] f, int offset) {
+		f[offset]=1;
+		for (int u=0; u<V; u++) {
+			if (key.known(u)) {
+				f[offset+1+u]=key.food(u);
+				f[offset+1+V+u]=key.police(u);
+			}
+			else {
+				f[offset+1+u]=model.foodProbability(u);
+				f[offset+1+V+u]=model.policeProbability(u);
+			}
+		}
+	}
+
+	//utility of class c for the features at offset
+	private double value (int c, double [] f, int offset) {
+		return dot(vectors[c],best(c,f,offset)*D,f,offset);
+	}
+
+	//index of the vector of class c that is best for the features at offset
+	private int best (int c, double [] f, int offset) {
+		int best=0;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int j=0; j<count[c]; j++) {
+			double value = dot(vectors[c],j*D,f,offset);
+			if (value>bestValue) {
+				bestValue=value;
+				best=j;
+			}
+		}
+		return best;
+	}
+
+	private double dot (double [] vector, int from, double [] f, int offset) {
+		double value=0;
+		for (int c=0; c<D; c++)
+			value+=vector[from+c]*f[offset+c];
+		return value;
+	}
+
+	//removes s from the points still to cover
+	private static int remove (int s, int [] todo, int [] position, int remaining) {
+		int i = position[s];
+		int last = todo[--remaining];
+		todo[i]=last;
+		position[last]=i;
+		position[s]=-1;
+		return remaining;
+	}
+}
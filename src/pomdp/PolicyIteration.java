@@ -0,0 +1,95 @@
+package pomdp;
+
+/**
+ *  The <tt>PolicyIteration</tt> class alternates exact policy evaluation and greedy improvement.
+ *  The initial policy comes from value iteration sweeps run only until every state that can reach
+ *  a terminal state has a finite utility; those utilities are a lower bound that the recorded
+ *  actions satisfy, so the initial policy reaches a terminal state from every such state.
+ *  Each evaluation solves the sparse linear system U = r + P U of the fixed-action transition matrix
+ *  with Gauss-Seidel iterations until the largest change is at most epsilon, and each improvement
+ *  switches a state to the best action for those utilities. It stops when no action changes.
+ */
+public class PolicyIteration implements Solver {
+
+	//fields
+	private final double epsilon;		//evaluation tolerance
+	private final int maxIterations;	//improvement rounds
+	private final int maxSweeps;		//gauss-seidel sweeps per evaluation
+
+	//constructors
+	public PolicyIteration() {
+		this(1e-12,Integer.MAX_VALUE,100000);
+	}
+
+	public PolicyIteration(double epsilon, int maxIterations, int maxSweeps) {
+		if (epsilon<0)
+			throw new IllegalArgumentException("Tolerance must be nonnegative");
+		if (maxIterations<1 || maxSweeps<1)
+			throw new IllegalArgumentException("Number of iterations must be positive");
+		this.epsilon=epsilon;
+		this.maxIterations=maxIterations;
+		this.maxSweeps=maxSweeps;
+	}
+
+	public SolveResult solve(TransitionModel transitions, StateStore store) {
+		int n = transitions.states();
+		long backups=0;
+
+		//initial policy: sweep until no utility becomes finite
+		double residual;
+		do {
+			residual=0;
+			for (int s=n-1; s>=0; s--)
+				residual = Math.max(residual,ValueIteration.backup(transitions,s,store));
+			backups+=n;
+		} while (residual==Double.POSITIVE_INFINITY);
+
+		int iterations=0;
+		boolean stable=false;
+		residual=0;
+		while (!stable && iterations<maxIterations) {
+			//policy evaluation
+			int sweeps=0;
+			do {
+				residual=0;
+				for (int s=n-1; s>=0; s--) {
+					if (store.action(s)<0 || transitions.isTerminal(s))
+						continue;
+					double utility = transitions.q(transitions.firstAction(s)+store.action(s),store);
+					residual = Math.max(residual,Math.abs(utility-store.utility(s)));
+					store.setUtility(s,utility);
+				}
+				sweeps++;
+			} while (residual>epsilon && sweeps<maxSweeps);
+			backups+=(long)sweeps*n;
+
+			//policy improvement
+			stable=true;
+			for (int s=0; s<n; s++) {
+				int action = store.action(s);
+				if (action<0 || transitions.isTerminal(s))
+					continue;
+				int first = transitions.firstAction(s);
+				double current = store.utility(s);
+				double threshold = current+epsilon+Math.ulp(current)*16; //ignore rounding-level gains
+				int best = action;
+				double bestUtility = threshold;
+				for (int a=first; a<transitions.endAction(s); a++) {
+					double utility = transitions.q(a,store);
+					if (utility>bestUtility) {
+						bestUtility=utility;
+						best=a-first;
+					}
+				}
+				if (best!=action) {
+					store.setAction(s,best);
+					stable=false;
+				}
+			}
+			backups+=n;
+			iterations++;
+		}
+
+		return new SolveResult(iterations,backups,residual,stable && residual<=epsilon);
+	}
+}
@@ -0,0 +1,262 @@
+package pomdp;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+import env.Environment;
+import env.VertexInfo;
+
+/**
+ *  The <tt>PolicySnapshot</tt> class is a solved belief space saved in a compact binary file,
+ *  read back by memory-mapping it, so a process can serve the policy without building and
+ *  solving the belief space again. Queries read the mapped file directly and allocate nothing.
+ *  <p>
+ *  The file (big-endian) starts with a 64 byte header: magic, format version, V, key words,
+ *  number of states, source, goal, hash table capacity and a fingerprint of the problem
+ *  (graph, food & police probabilities, source and goal). Then come the columns by state id:
+ *  the packed keys (3*words longs each, see {@link BeliefKey}), the utilities, the vertices and
+ *  the vertex the policy moves to (-1 if none), followed by an open addressing table of state ids
+ *  over {@link StateIndex}'s hash of (vertex, key), which is stable across runs.
+ *  <p>
+ *  A snapshot whose fingerprint {@link #matches} the current problem executes the policy like
+ *  {@link BeliefSpace#execute}, with the observations generated by a {@link BeliefModel}.
+ */
+public class PolicySnapshot implements Planner {
+
+	//fields
+	private static final int MAGIC = 0x504F4C53; //"POLS"
+	private static final int FORMAT = 1;
+	private static final int HEADER = 64;
+	private final MappedByteBuffer buffer;
+	private final int V;
+	private final int words;
+	private final int states;
+	private final int source;
+	private final int goal;
+	private final int mask;
+	private final long fingerprint;
+	private final int keys, utilities, vertices, next, table; //section offsets
+
+	//maps a snapshot file
+	private PolicySnapshot(MappedByteBuffer buffer) throws IOException {
+		this.buffer=buffer;
+		if (buffer.capacity()<HEADER || buffer.getInt(0)!=MAGIC)
+			throw new IOException("Not a policy snapshot");
+		if (buffer.getInt(4)!=FORMAT)
+			throw new IOException("Unsupported policy snapshot format "+buffer.getInt(4));
+		V = buffer.getInt(8);
+		words = buffer.getInt(12);
+		states = buffer.getInt(16);
+		source = buffer.getInt(20);
+		goal = buffer.getInt(24);
+		int capacity = buffer.getInt(28);
+		mask = capacity-1;
+		fingerprint = buffer.getLong(32);
+		keys = HEADER;
+		utilities = keys+states*3*words*8;
+		vertices = utilities+states*8;
+		next = vertices+states*4;
+		table = next+states*4;
+		if (buffer.capacity()!=table+capacity*4)
+			throw new IOException("Truncated policy snapshot");
+	}
+
+	//loads the snapshot in file by memory-mapping it
+	public static PolicySnapshot load (String file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file,"r");
+		try {
+			FileChannel channel = in.getChannel();
+			if (channel.size()>Integer.MAX_VALUE)
+				throw new IOException("Policy snapshot too large to map");
+			return new PolicySnapshot(channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size()));
+		} finally {
+			in.close(); //the mapping stays valid
+		}
+	}
+
+	//writes the solved states of store to file, transitions give the vertex each chosen action moves to
+	//the states of excluded (e.g. retired by a topology change) are kept out of the lookup table
+	public static void write (String file, StateStore store, TransitionModel transitions, BitSet excluded, long fingerprint, int source, int goal) throws IOException {
+		int V = store.V();
+		int words = BeliefKey.words(V);
+		int states = store.size();
+		int [] index = StateIndex.table(states);
+		int capacity = index.length;
+		long size = HEADER+(long)states*(3*words*8+8+4+4)+(long)capacity*4;
+		if (size>Integer.MAX_VALUE)
+			throw new IOException("Belief space too large for a policy snapshot");
+		RandomAccessFile out = new RandomAccessFile(file,"rw");
+		try {
+			out.setLength(size);
+			MappedByteBuffer buffer = out.getChannel().map(FileChannel.MapMode.READ_WRITE,0,size);
+			buffer.putInt(0,MAGIC);
+			buffer.putInt(4,FORMAT);
+			buffer.putInt(8,V);
+			buffer.putInt(12,words);
+			buffer.putInt(16,states);
+			buffer.putInt(20,source);
+			buffer.putInt(24,goal);
+			buffer.putInt(28,capacity);
+			buffer.putLong(32,fingerprint);
+			int keys = HEADER;
+			int utilities = keys+states*3*words*8;
+			int vertices = utilities+states*8;
+			int next = vertices+states*4;
+			int table = next+states*4;
+			for (int s=0; s<states; s++) {
+				for (int i=0; i<3*words; i++)
+					buffer.putLong(keys+(s*3*words+i)*8,store.word(s,i));
+				buffer.putInt(vertices+s*4,store.vertex(s));
+				if (excluded.get(s)) {
+					buffer.putDouble(utilities+s*8,Double.NEGATIVE_INFINITY);
+					buffer.putInt(next+s*4,-1);
+					continue;
+				}
+				buffer.putDouble(utilities+s*8,store.utility(s));
+				int action = store.action(s);
+				int w = (action<0 || transitions.isTerminal(s)) ? -1 : transitions.target(transitions.firstAction(s)+action);
+				buffer.putInt(next+s*4,w);
+				StateIndex.insert(index,s,StateIndex.hash(store.vertex(s),store.key(s)));
+			}
+			for (int slot=0; slot<capacity; slot++)
+				buffer.putInt(table+slot*4,index[slot]);
+			buffer.force();
+		} finally {
+			out.close();
+		}
+	}
+
+	//fingerprint of the problem a snapshot solves: the graph, the probabilities, source and goal
+	public static long fingerprint (Environment env, int source, int goal) {
+		long x = Fingerprint.add(Fingerprint.graph(env.Graph(),true),env.Info(),env.V());
+		return Fingerprint.add(x,(long)source<<32|goal);
+	}
+
+	//true if the snapshot was written for this problem
+	public boolean matches (Environment env, int source, int goal) {
+		if (env.V()!=V || source!=this.source || goal!=this.goal)
+			return false;
+		return fingerprint==fingerprint(env,source,goal);
+	}
+
+	//id of (vertex,key), -1 if the snapshot does not hold it
+	public int find (int vertex, BeliefKey key) {
+		if (key.V()!=V)
+			return -1;
+		int slot = StateIndex.hash(vertex,key) & mask;
+		int id;
+		while ((id=buffer.getInt(table+slot*4))!=StateIndex.EMPTY) {
+			if (matches(id,vertex,key))
+				return id;
+			slot = (slot+1) & mask;
+		}
+		return -1;
+	}
+
+	//true if state id is (vertex,key)
+	private boolean matches (int id, int vertex, BeliefKey key) {
+		if (buffer.getInt(vertices+id*4)!=vertex)
+			return false;
+		int base = keys+id*3*words*8;
+		for (int i=0; i<3*words; i++) {
+			if (buffer.getLong(base+i*8)!=key.word(i))
+				return false;
+		}
+		return true;
+	}
+
+	//key of state id
+	private BeliefKey key (int id) {
+		long [] bits = new long [3*words];
+		int base = keys+id*3*words*8;
+		for (int i=0; i<bits.length; i++)
+			bits[i]=buffer.getLong(base+i*8);
+		return new BeliefKey(V,bits);
+	}
+
+	//executes the policy from the source on the realized environment VI into plan, which is cleared first
+	//model observes the states reached and gives the edge costs, it must belong to the problem of the snapshot
+	public Plan execute (BeliefModel model, VertexInfo VI, Plan plan) {
+		int v = source;
+		BeliefKey key = model.observe(null,v,VI);
+		int id = find(v,key);
+		plan.start(v,id);
+		for (int step=0; ; step++) {
+			if (id<0) {
+				plan.finish(Plan.Outcome.STUCK);
+				return plan;
+			}
+			if (model.isGoal(v)) {
+				plan.finish(Plan.Outcome.GOAL);
+				return plan;
+			}
+			int w = buffer.getInt(next+id*4);
+			if (w<0) {
+				plan.finish(Plan.Outcome.STUCK);
+				return plan;
+			}
+			if (step==states) {
+				plan.finish(Plan.Outcome.STEP_LIMIT);
+				return plan;
+			}
+			double cost = model.graph().getWeight(v,w);
+			if (key.food(v)==1)
+				cost*=0.5;
+			v=w;
+			key = model.observe(key,v,VI);
+			id = find(v,key);
+			plan.step(v,id,cost);
+		}
+	}
+
+	//prints the states of plan and how it ended to out, like BeliefSpace.printPlan
+	public void printPlan (Plan plan, PrintStream out) {
+		String [] states = new String [plan.steps()+1];
+		for (int i=0; i<states.length; i++) {
+			int id = plan.state(i);
+			states[i] = "at v"+plan.vertex(i)+": "+((id<0) ? "unknown state" : key(id)+", utility: "+buffer.getDouble(utilities+id*8));
+		}
+		plan.print(states,out);
+	}
+
+	//expected utility of (vertex,key), minus infinity if the snapshot does not hold it
+	public double utility (int vertex, BeliefKey key) {
+		int id = find(vertex,key);
+		return (id<0) ? Double.NEGATIVE_INFINITY : buffer.getDouble(utilities+id*8);
+	}
+
+	//vertex to move to from (vertex,key), -1 if there is no move or the snapshot does not hold it
+	public int nextVertex (int vertex, BeliefKey key) {
+		int id = find(vertex,key);
+		return (id<0) ? -1 : buffer.getInt(next+id*4);
+	}
+
+	//number of states
+	public int states () {
+		return states;
+	}
+
+	//number of vertices
+	public int V () {
+		return V;
+	}
+
+	//source vertex
+	public int source () {
+		return source;
+	}
+
+	//goal vertex
+	public int goal () {
+		return goal;
+	}
+
+	//fingerprint of the solved problem
+	public long fingerprint () {
+		return fingerprint;
+	}
+}
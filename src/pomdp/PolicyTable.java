@@ -0,0 +1,178 @@
+package pomdp;
+
+import java.util.BitSet;
+
+/**
+ *  The <tt>PolicyTable</tt> class is a solved policy compiled to flat arrays: per state id the
+ *  packed key, the vertex, the vertex the policy moves to and the expected cost of reaching the goal,
+ *  with an open addressing table of state ids over {@link StateIndex}'s hash of (vertex, key).
+ *  The table is immutable, so it can be queried from any number of threads, and queries allocate
+ *  nothing: the observations may be given as certainty arrays (0 - no, 1 - yes, 2 - unknown),
+ *  which are hashed and compared word by word without building a {@link BeliefKey}.
+ */
+public class PolicyTable implements Planner {
+
+	//fields
+	private final int V;
+	private final int words;
+	private final int states;
+	private final int mask;
+	private final long [] keys; //3*words longs per state
+	private final int [] vertices;
+	private final int [] next;
+	private final double [] costs;
+	private final int [] table;
+
+	//constructor, compiles the solved states of store, transitions give the vertex each chosen action moves to
+	public PolicyTable(StateStore store, TransitionModel transitions) {
+		this(store,transitions,new BitSet());
+	}
+
+	//the states of excluded (e.g. retired by a topology change) are not held by the table
+	public PolicyTable(StateStore store, TransitionModel transitions, BitSet excluded) {
+		V = store.V();
+		words = BeliefKey.words(V);
+		states = store.size();
+		keys = new long [states*3*words];
+		vertices = new int [states];
+		next = new int [states];
+		costs = new double [states];
+		table = StateIndex.table(states);
+		mask = table.length-1;
+		for (int s=0; s<states; s++) {
+			for (int i=0; i<3*words; i++)
+				keys[s*3*words+i]=store.word(s,i);
+			vertices[s]=store.vertex(s);
+			if (excluded.get(s)) {
+				next[s]=-1;
+				costs[s]=Double.POSITIVE_INFINITY;
+				continue;
+			}
+			int action = store.action(s);
+			next[s] = (action<0 || transitions.isTerminal(s)) ? -1 : transitions.target(transitions.firstAction(s)+action);
+			double utility = store.utility(s);
+			costs[s] = (utility==0) ? 0 : -utility;
+			StateIndex.insert(table,s,StateIndex.hash(vertices[s],store.key(s)));
+		}
+	}
+
+	//id of (vertex,key), -1 if the table does not hold it
+	public int find (int vertex, BeliefKey key) {
+		if (key.V()!=V)
+			return -1;
+		int slot = StateIndex.hash(vertex,key) & mask;
+		int id;
+		while ((id=table[slot])!=StateIndex.EMPTY) {
+			if (vertices[id]==vertex && matches(id,key))
+				return id;
+			slot = (slot+1) & mask;
+		}
+		return -1;
+	}
+
+	//id of the state at vertex with the given food & police certainties, -1 if the table does not hold it
+	public int find (int vertex, int [] foodCertinties, int [] policeCertinties) {
+		if (foodCertinties.length!=V || policeCertinties.length!=V)
+			return -1;
+		for (int v=0; v<V; v++) {
+			if ((foodCertinties[v]==2)!=(policeCertinties[v]==2))
+				return -1; //food & police are known together
+		}
+		long x = BeliefKey.HASH_SEED;
+		for (int i=0; i<3*words; i++)
+			x = BeliefKey.mix(x ^ word(foodCertinties,policeCertinties,i));
+		int slot = StateIndex.hash(vertex,BeliefKey.fold(x)) & mask;
+		int id;
+		while ((id=table[slot])!=StateIndex.EMPTY) {
+			if (vertices[id]==vertex && matches(id,foodCertinties,policeCertinties))
+				return id;
+			slot = (slot+1) & mask;
+		}
+		return -1;
+	}
+
+	//true if state id has key
+	private boolean matches (int id, BeliefKey key) {
+		int base = id*3*words;
+		for (int i=0; i<3*words; i++) {
+			if (keys[base+i]!=key.word(i))
+				return false;
+		}
+		return true;
+	}
+
+	//true if state id has the given certainties
+	private boolean matches (int id, int [] foodCertinties, int [] policeCertinties) {
+		int base = id*3*words;
+		for (int i=0; i<3*words; i++) {
+			if (keys[base+i]!=word(foodCertinties,policeCertinties,i))
+				return false;
+		}
+		return true;
+	}
+
+	//word i of the packed key ([known | food | police]) with the given certainties
+	private long word (int [] foodCertinties, int [] policeCertinties, int i) {
+		int part = i/words;
+		int from = (i%words)<<6;
+		int to = Math.min(V,from+64);
+		long bits=0;
+		for (int v=from; v<to; v++) {
+			if (foodCertinties[v]==2)
+				continue;
+			if (part==0 || (part==1 ? foodCertinties[v] : policeCertinties[v])==1)
+				bits|=1L<<v;
+		}
+		return bits;
+	}
+
+	//vertex to move to from (vertex,key), -1 if there is no move or the table does not hold it
+	public int nextVertex (int vertex, BeliefKey key) {
+		int id = find(vertex,key);
+		return (id<0) ? -1 : next[id];
+	}
+
+	//vertex to move to from currentVertex with the observed food & police certainties,
+	//-1 if there is no move or the table does not hold the state
+	public int nextAction (int currentVertex, int [] foodCertinties, int [] policeCertinties) {
+		int id = find(currentVertex,foodCertinties,policeCertinties);
+		return (id<0) ? -1 : next[id];
+	}
+
+	//expected cost of reaching the goal from (vertex,key), infinite if it can not be reached or the table does not hold it
+	public double expectedCost (int vertex, BeliefKey key) {
+		int id = find(vertex,key);
+		return (id<0) ? Double.POSITIVE_INFINITY : costs[id];
+	}
+
+	//expected cost of reaching the goal from currentVertex with the observed food & police certainties
+	public double expectedCost (int currentVertex, int [] foodCertinties, int [] policeCertinties) {
+		int id = find(currentVertex,foodCertinties,policeCertinties);
+		return (id<0) ? Double.POSITIVE_INFINITY : costs[id];
+	}
+
+	//vertex the policy moves to from state id, -1 if none
+	public int next (int id) {
+		return next[id];
+	}
+
+	//expected cost of state id
+	public double cost (int id) {
+		return costs[id];
+	}
+
+	//vertex of state id
+	public int vertex (int id) {
+		return vertices[id];
+	}
+
+	//number of states
+	public int states () {
+		return states;
+	}
+
+	//number of vertices
+	public int V () {
+		return V;
+	}
+}
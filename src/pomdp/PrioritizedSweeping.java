@@ -0,0 +1,79 @@
+package pomdp;
+
+/**
+ *  The <tt>PrioritizedSweeping</tt> class backs up states in order of their Bellman error.
+ *  Every state whose backup would raise its utility by more than epsilon is queued in an
+ *  {@link IndexedHeap} keyed by that error. The state with the largest error is backed up first,
+ *  and only the predecessors of a state whose utility changed are re-evaluated and re-queued,
+ *  so late iterations touch only the region that is still changing.
+ *  Utilities only ever increase (starting from minus infinity), as in {@link ValueIteration}.
+ */
+public class PrioritizedSweeping implements Solver {
+
+	//fields
+	private final double epsilon;
+	private final long maxBackups;
+
+	//constructors
+	public PrioritizedSweeping() {
+		this(0,Long.MAX_VALUE);
+	}
+
+	public PrioritizedSweeping(double epsilon, long maxBackups) {
+		if (epsilon<0)
+			throw new IllegalArgumentException("Tolerance must be nonnegative");
+		if (maxBackups<1)
+			throw new IllegalArgumentException("Number of backups must be positive");
+		this.epsilon=epsilon;
+		this.maxBackups=maxBackups;
+	}
+
+	public SolveResult solve(TransitionModel transitions, StateStore store) {
+		int n = transitions.states();
+		IndexedHeap queue = new IndexedHeap(n);
+		double skipped=0; //largest error left out of the queue
+
+		//initial errors
+		for (int s=n-1; s>=0; s--) {
+			double error = error(transitions,s,store);
+			if (error>epsilon)
+				queue.offer(s,error);
+			else
+				skipped = Math.max(skipped,error);
+		}
+
+		//back up the largest errors first
+		long backups=0;
+		while (!queue.isEmpty() && backups<maxBackups) {
+			int s = queue.poll();
+			double change = ValueIteration.backup(transitions,s,store);
+			backups++;
+			if (change==0)
+				continue;
+			for (int i=transitions.firstPredecessor(s); i<transitions.endPredecessor(s); i++) {
+				int p = transitions.predecessor(i);
+				double error = error(transitions,p,store);
+				if (error>epsilon)
+					queue.offer(p,error);
+				else
+					skipped = Math.max(skipped,error);
+			}
+		}
+
+		double residual = queue.isEmpty() ? skipped : Math.max(skipped,queue.maxPriority());
+		return new SolveResult(1,backups,residual,queue.isEmpty());
+	}
+
+	//utility increase a backup of s would make, infinite for a first finite value
+	private static double error (TransitionModel transitions, int s, StateStore store) {
+		if (transitions.isTerminal(s))
+			return 0;
+		double utility = store.utility(s);
+		double maxUtility = utility;
+		for (int a=transitions.firstAction(s); a<transitions.endAction(s); a++)
+			maxUtility = Math.max(maxUtility,transitions.q(a,store));
+		if (maxUtility<=utility)
+			return 0;
+		return maxUtility-utility;
+	}
+}
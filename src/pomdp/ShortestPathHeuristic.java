@@ -0,0 +1,100 @@
+package pomdp;
+
+import graph.Edge;
+import graph.EdgeWeightedGraph;
+import graph.ShortestPaths;
+
+/**
+ *  The <tt>ShortestPathHeuristic</tt> class bounds the utility of a state by the cost of the
+ *  cheapest route to the goal in an optimistic version of the graph: every vertex that may hold
+ *  food halves the edges leaving it, and only vertices certain or known to hold police are avoided.
+ *  While police at the goal is unknown and possible, the search may also end next to the goal,
+ *  where that police would be observed (a terminal state worth 0).
+ *  The distance tables come from the graph's {@link ShortestPaths} service; the first move uses
+ *  the food and police the state actually knows. Police known beyond the certain ones changes the
+ *  vertices to avoid, those distances are computed per state and not cached.
+ *  The bound holds for every state reachable with positive probability (a key revealing food
+ *  where it is impossible may beat it).
+ */
+public class ShortestPathHeuristic implements Heuristic {
+
+	//fields
+	private final BeliefModel model;
+	private final boolean [] halved;
+	private final boolean [] blocked;
+	private final int [] goalOnly;
+	private final int [] goalOrNeighbours;
+	private volatile double [][] distances;	//to the goal, to the goal or a neighbour
+	private volatile int version;			//graph version the distances belong to
+
+	//constructor
+	public ShortestPathHeuristic(BeliefModel model) {
+		this.model=model;
+		int V = model.V();
+		int goal = model.goal();
+		halved = new boolean [V];
+		blocked = new boolean [V];
+		for (int v=0; v<V; v++) {
+			halved[v] = model.foodProbability(v)>0;
+			blocked[v] = model.policeProbability(v)>=1;
+		}
+		goalOnly = new int [] {goal};
+		int [] connected = model.graph().connectedVetexes(goal);
+		int count=1;
+		for (int v=0; v<V; v++)
+			if (connected[v]==1 && v!=goal)
+				count++;
+		goalOrNeighbours = new int [count];
+		goalOrNeighbours[0]=goal;
+		count=1;
+		for (int v=0; v<V; v++)
+			if (connected[v]==1 && v!=goal)
+				goalOrNeighbours[count++]=v;
+	}
+
+	public double utility(int vertex, BeliefKey key) {
+		int goal = model.goal();
+		if (model.isTerminal(vertex,key))
+			return 0;
+		boolean goalMayBeBlocked = key.police(goal)==2 && model.policeProbability(goal)>0;
+		double [] distTo = distances(key,goalMayBeBlocked);
+		boolean food = key.food(vertex)==1;
+		double cost = Double.POSITIVE_INFINITY;
+		for (Edge e : model.graph().adj(vertex)) {
+			int w = e.other(vertex);
+			if (w==vertex || key.police(w)==1)
+				continue;
+			double weight = food ? 0.5*e.weight() : e.weight();
+			cost = Math.min(cost,weight+distTo[w]);
+		}
+		return -cost;
+	}
+
+	//distances for key: the shared tables, or a query that also avoids the police key knows of
+	private double [] distances (BeliefKey key, boolean goalMayBeBlocked) {
+		boolean [] avoid=null;
+		for (int u=0; u<model.V(); u++) {
+			if (!blocked[u] && key.police(u)==1) {
+				if (avoid==null)
+					avoid = blocked.clone();
+				avoid[u]=true;
+			}
+		}
+		if (avoid==null)
+			return distances()[goalMayBeBlocked ? 1 : 0];
+		//one query per police pattern, too many to cache
+		return model.graph().shortestPaths().computeDistancesTo(goalMayBeBlocked ? goalOrNeighbours : goalOnly,halved,avoid);
+	}
+
+	//distance tables of the current graph version
+	private double [][] distances () {
+		EdgeWeightedGraph graph = model.graph();
+		int current = graph.version();
+		if (distances==null || version!=current) {
+			ShortestPaths paths = graph.shortestPaths();
+			distances = new double [][] {paths.distancesTo(goalOnly,halved,blocked),paths.distancesTo(goalOrNeighbours,halved,blocked)};
+			version=current;
+		}
+		return distances;
+	}
+}
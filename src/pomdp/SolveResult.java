@@ -0,0 +1,49 @@
+package pomdp;
+
+/**
+ *  The <tt>SolveResult</tt> class reports how a {@link Solver} run ended:
+ *  the number of iterations (sweeps, or other rounds for solvers that do not sweep),
+ *  the number of state backups, and the largest Bellman residual (utility change) left.
+ *  The problem is undiscounted, so the residual is the reported error measure;
+ *  a residual of 0 means the utilities are an exact fixed point.
+ */
+public class SolveResult {
+
+	//fields
+	private final int iterations;
+	private final long backups;
+	private final double residual;
+	private final boolean converged;
+
+	//constructor
+	public SolveResult(int iterations, long backups, double residual, boolean converged) {
+		this.iterations=iterations;
+		this.backups=backups;
+		this.residual=residual;
+		this.converged=converged;
+	}
+
+	//number of sweeps over the states
+	public int getIterations () {
+		return iterations;
+	}
+
+	//number of state backups
+	public long getBackups () {
+		return backups;
+	}
+
+	//largest utility change left
+	public double getResidual () {
+		return residual;
+	}
+
+	//true if the residual reached the tolerance before the iteration limit
+	public boolean isConverged () {
+		return converged;
+	}
+
+	public String toString() {
+		return "iterations: "+iterations+", backups: "+backups+", residual: "+residual+(converged ? "" : " (iteration limit reached)");
+	}
+}
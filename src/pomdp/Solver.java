@@ -0,0 +1,12 @@
+package pomdp;
+
+/**
+ *  The <tt>Solver</tt> interface is implemented by the algorithms computing the optimal policy
+ *  of a compiled belief space. A solver starts from the utilities and actions in the store
+ *  and leaves the solved utility and chosen action (index among the state's actions) of every state there.
+ */
+public interface Solver {
+
+	//solves every state of store over transitions
+	SolveResult solve(TransitionModel transitions, StateStore store);
+}
@@ -0,0 +1,120 @@
+package pomdp;
+
+import java.util.Arrays;
+
+/**
+ *  The <tt>StateIndex</tt> class maps a (vertex, belief key) pair to a state id of a {@link StateStore}.
+ *  It is a primitive open addressing hash table (linear probing over an int array),
+ *  so locating a state costs a hash of the packed key and one or two probes
+ *  instead of a linear scan over the states of the vertex.
+ *  New states are appended to the store, so ids are assigned sequentially in insertion order.
+ *  The hash and the table layout are shared with {@link PolicyTable} and {@link PolicySnapshot},
+ *  which build their tables with {@link #table(int)} and {@link #insert(int[],int,int)}.
+ */
+public class StateIndex {
+
+	//fields
+	static final int EMPTY = -1;
+	private final StateStore store;
+	private int [] table;
+	private int mask;
+	private int [] hashes; //hash per state id, for rehashing
+
+	//constructor
+	public StateIndex(StateStore store) {
+		this.store=store;
+		table = table(store.size());
+		mask = table.length-1;
+		hashes = new int [Math.max(16,store.size())];
+		for (int id=0; id<store.size(); id++)
+			insert(id,hash(store.vertex(id),store.key(id)));
+	}
+
+	//indexed store
+	public StateStore store () {
+		return store;
+	}
+
+	//number of indexed states
+	public int size () {
+		return store.size();
+	}
+
+	//returns the id of (vertex,key), or -1 if not indexed
+	public int find (int vertex, BeliefKey key) {
+		int slot = hash(vertex,key) & mask;
+		int id;
+		while ((id=table[slot])!=EMPTY) {
+			if (store.matches(id,vertex,key))
+				return id;
+			slot = (slot+1) & mask;
+		}
+		return -1;
+	}
+
+	//adds (vertex,key) to the store and returns its new id, or the existing id if already indexed
+	public int add (int vertex, BeliefKey key) {
+		int h = hash(vertex,key);
+		int slot = h & mask;
+		int id;
+		while ((id=table[slot])!=EMPTY) {
+			if (store.matches(id,vertex,key))
+				return id;
+			slot = (slot+1) & mask;
+		}
+		id = store.add(vertex,key);
+		insert(id,h);
+		return id;
+	}
+
+	//places id in the table
+	private void insert (int id, int h) {
+		if (id>=hashes.length)
+			hashes = Arrays.copyOf(hashes,Math.max(id+1,hashes.length*2));
+		hashes[id]=h;
+		if ((id+1)*2 > table.length) {
+			rehash(id);
+			return;
+		}
+		insert(table,id,h);
+	}
+
+	//doubles the table, reinserting ids up to last
+	private void rehash (int last) {
+		table = new int [table.length*2];
+		Arrays.fill(table,EMPTY);
+		mask = table.length-1;
+		for (int id=0; id<=last; id++)
+			insert(table,id,hashes[id]);
+	}
+
+	//an empty table for n ids, a power of two with at least twice as many slots as ids
+	static int [] table (int n) {
+		int capacity = 16;
+		while (capacity < n*2)
+			capacity <<= 1;
+		int [] table = new int [capacity];
+		Arrays.fill(table,EMPTY);
+		return table;
+	}
+
+	//places id, whose hash is h, in the first empty slot of table from h on
+	static void insert (int [] table, int id, int h) {
+		int mask = table.length-1;
+		int slot = h & mask;
+		while (table[slot]!=EMPTY)
+			slot = (slot+1) & mask;
+		table[slot]=id;
+	}
+
+	//hash of (vertex,key)
+	static int hash (int vertex, BeliefKey key) {
+		return hash(vertex,key.hashCode());
+	}
+
+	//hash of (vertex,key) from the hash code of key
+	static int hash (int vertex, int keyHash) {
+		long h = BeliefKey.mix(keyHash*0x9E3779B97F4A7C15L + vertex);
+		return (int)(h ^ (h>>>32));
+	}
+}
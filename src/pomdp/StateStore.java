@@ -0,0 +1,113 @@
+package pomdp;
+
+/**
+ *  The <tt>StateStore</tt> class keeps the belief states in columns addressed by state id:
+ *  vertex, packed key words (see {@link BeliefKey}), utility, chosen action and terminal/goal flags
+ *  per state. Solvers read and write the utility and action columns in place.
+ *  {@link #onHeap(int)} stores the columns in primitive arrays,
+ *  {@link #offHeap(int)} stores them in direct byte buffers outside of the java heap.
+ */
+public abstract class StateStore {
+
+	//fields
+	private static final int TERMINAL = 1;
+	private static final int GOAL = 2;
+	protected final int V;
+	protected final int words; //longs per mask, a key has 3*words longs
+	protected int size;
+
+	//constructor
+	protected StateStore(int V) {
+		this.V=V;
+		this.words=BeliefKey.words(V);
+	}
+
+	//heap backed store
+	public static StateStore onHeap(int V) {
+		return new HeapStateStore(V);
+	}
+
+	//off-heap backed store
+	public static StateStore offHeap(int V) {
+		return new DirectStateStore(V);
+	}
+
+	//number of states
+	public int size () {
+		return size;
+	}
+
+	//number of vertices
+	public int V () {
+		return V;
+	}
+
+	//appends a state and returns its id
+	public int add (int vertex, BeliefKey key) {
+		int id = size;
+		ensureCapacity(id+1);
+		setVertex(id,vertex);
+		setAction(id,-1);
+		setFlags(id,0);
+		for (int i=0; i<3*words; i++)
+			setWord(id,i,key.word(i));
+		size++;
+		return id;
+	}
+
+	//key of state id
+	public BeliefKey key (int id) {
+		long [] bits = new long [3*words];
+		for (int i=0; i<bits.length; i++)
+			bits[i]=word(id,i);
+		return new BeliefKey(V,bits);
+	}
+
+	//true if state id is (vertex,key)
+	public boolean matches (int id, int vertex, BeliefKey key) {
+		if (vertex(id)!=vertex)
+			return false;
+		for (int i=0; i<3*words; i++) {
+			if (word(id,i)!=key.word(i))
+				return false;
+		}
+		return true;
+	}
+
+	//true if state id has food at its own vertex
+	public boolean hasFood (int id) {
+		int v = vertex(id);
+		return (word(id,v>>>6) & word(id,words+(v>>>6)) & (1L<<v))!=0;
+	}
+
+	//terminal flag
+	public boolean isTerminal (int id) {
+		return (flags(id) & TERMINAL)!=0;
+	}
+
+	public void setTerminal (int id, boolean value) {
+		setFlags(id, value ? flags(id)|TERMINAL : flags(id)&~TERMINAL);
+	}
+
+	//goal flag
+	public boolean isGoal (int id) {
+		return (flags(id) & GOAL)!=0;
+	}
+
+	public void setGoal (int id, boolean value) {
+		setFlags(id, value ? flags(id)|GOAL : flags(id)&~GOAL);
+	}
+
+	//columns
+	public abstract int vertex (int id);
+	public abstract long word (int id, int i);
+	public abstract double utility (int id);
+	public abstract void setUtility (int id, double utility);
+	public abstract int action (int id); //index of the chosen action among the state's actions, -1 if none
+	public abstract void setAction (int id, int action);
+	protected abstract int flags (int id);
+	protected abstract void setFlags (int id, int flags);
+	protected abstract void setVertex (int id, int vertex);
+	protected abstract void setWord (int id, int i, long word);
+	protected abstract void ensureCapacity (int capacity);
+}
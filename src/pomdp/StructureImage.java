@@ -0,0 +1,230 @@
+package pomdp;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+import graph.EdgeWeightedGraph;
+
+/**
+ *  The <tt>StructureImage</tt> class is the part of a {@link BeliefSpace} that depends only on the
+ *  graph topology, the goal and (for {@link BeliefSpace.Construction#REACHABLE}) the source:
+ *  the states and the successors of each of their transitions. Probabilities and edge weights are
+ *  not stored, so one image serves every probability or weight scenario of the topology, and a belief
+ *  space loaded from it only compiles the numeric transition data and solves (see
+ *  {@link BeliefSpace#BeliefSpace(env.Environment,int,StructureImage)}).
+ *  <p>
+ *  The file (big-endian, memory-mapped when loaded) starts with a 64 byte header: magic, format
+ *  version, V, key words, number of states, transitions and outcomes, construction, source, goal
+ *  and a fingerprint of the topology. Then come the columns by state id: the packed keys
+ *  (3*words longs each, see {@link BeliefKey}), the vertices, flags (1 for a state retired by
+ *  {@link BeliefSpace#updateTopology}) and the first transition, followed by the first outcome per
+ *  transition and the successor id per outcome.
+ */
+public class StructureImage {
+
+	//fields
+	private static final int MAGIC = 0x42535452; //"BSTR"
+	private static final int FORMAT = 1;
+	private static final int HEADER = 64;
+	private static final int RETIRED = 1;
+	private final MappedByteBuffer buffer;
+	private final int V;
+	private final int words;
+	private final int states;
+	private final int groups;
+	private final int outcomes;
+	private final BeliefSpace.Construction construction;
+	private final int source;
+	private final int goal;
+	private final long fingerprint;
+	private final int keys, vertices, flags, groupStart, outcomeStart, successors; //section offsets
+
+	//maps an image file
+	private StructureImage(MappedByteBuffer buffer) throws IOException {
+		this.buffer=buffer;
+		if (buffer.capacity()<HEADER || buffer.getInt(0)!=MAGIC)
+			throw new IOException("Not a belief structure image");
+		if (buffer.getInt(4)!=FORMAT)
+			throw new IOException("Unsupported belief structure image format "+buffer.getInt(4));
+		V = buffer.getInt(8);
+		words = buffer.getInt(12);
+		states = buffer.getInt(16);
+		groups = buffer.getInt(20);
+		outcomes = buffer.getInt(24);
+		construction = BeliefSpace.Construction.values()[buffer.getInt(28)];
+		source = buffer.getInt(32);
+		goal = buffer.getInt(36);
+		fingerprint = buffer.getLong(40);
+		keys = HEADER;
+		vertices = keys+states*3*words*8;
+		flags = vertices+states*4;
+		groupStart = flags+states*4;
+		outcomeStart = groupStart+(states+1)*4;
+		successors = outcomeStart+(groups+1)*4;
+		if (buffer.capacity()!=successors+outcomes*4)
+			throw new IOException("Truncated belief structure image");
+	}
+
+	//loads the image in file by memory-mapping it
+	public static StructureImage load (String file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file,"r");
+		try {
+			FileChannel channel = in.getChannel();
+			if (channel.size()>Integer.MAX_VALUE)
+				throw new IOException("Belief structure image too large to map");
+			return new StructureImage(channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size()));
+		} finally {
+			in.close(); //the mapping stays valid
+		}
+	}
+
+	//writes the states of store and their transitions in structure to file
+	static void write (String file, EdgeWeightedGraph graph, int source, int goal, BeliefSpace.Construction construction,
+			TransitionStructure structure, StateStore store, BitSet retired) throws IOException {
+		int V = store.V();
+		int words = BeliefKey.words(V);
+		int n = store.size();
+		long groups=0, outcomes=0;
+		for (int s=0; s<n; s++) {
+			if (!structure.hasRow(s))
+				continue;
+			groups+=structure.endGroup(s)-structure.firstGroup(s);
+			outcomes+=structure.firstOutcome(structure.endGroup(s))-structure.firstOutcome(structure.firstGroup(s));
+		}
+		long size = HEADER+(long)n*(3*words*8+4+4+4)+4+(groups+1)*4+outcomes*4;
+		if (size>Integer.MAX_VALUE)
+			throw new IOException("Belief space too large for a structure image");
+		RandomAccessFile out = new RandomAccessFile(file,"rw");
+		try {
+			out.setLength(size);
+			MappedByteBuffer buffer = out.getChannel().map(FileChannel.MapMode.READ_WRITE,0,size);
+			buffer.putInt(0,MAGIC);
+			buffer.putInt(4,FORMAT);
+			buffer.putInt(8,V);
+			buffer.putInt(12,words);
+			buffer.putInt(16,n);
+			buffer.putInt(20,(int)groups);
+			buffer.putInt(24,(int)outcomes);
+			buffer.putInt(28,construction.ordinal());
+			buffer.putInt(32,source);
+			buffer.putInt(36,goal);
+			buffer.putLong(40,fingerprint(graph,source,goal,construction));
+			int keys = HEADER;
+			int vertices = keys+n*3*words*8;
+			int flags = vertices+n*4;
+			int groupStart = flags+n*4;
+			int outcomeStart = groupStart+(n+1)*4;
+			int successors = outcomeStart+((int)groups+1)*4;
+			int g=0, o=0;
+			for (int s=0; s<n; s++) {
+				for (int i=0; i<3*words; i++)
+					buffer.putLong(keys+(s*3*words+i)*8,store.word(s,i));
+				buffer.putInt(vertices+s*4,store.vertex(s));
+				buffer.putInt(flags+s*4,retired.get(s) ? RETIRED : 0);
+				buffer.putInt(groupStart+s*4,g);
+				if (!structure.hasRow(s))
+					continue;
+				for (int group=structure.firstGroup(s); group<structure.endGroup(s); group++) {
+					buffer.putInt(outcomeStart+g*4,o);
+					for (int i=structure.firstOutcome(group); i<structure.endOutcome(group); i++)
+						buffer.putInt(successors+(o++)*4,structure.successor(i));
+					g++;
+				}
+			}
+			buffer.putInt(groupStart+n*4,g);
+			buffer.putInt(outcomeStart+g*4,o);
+			buffer.force();
+		} finally {
+			out.close();
+		}
+	}
+
+	//fingerprint of the topology an image belongs to: vertices, edge ends, goal, construction and (if only reachable states are kept) source
+	public static long fingerprint (EdgeWeightedGraph graph, int source, int goal, BeliefSpace.Construction construction) {
+		long x = Fingerprint.add(Fingerprint.graph(graph,false),(long)construction.ordinal()<<32|goal);
+		if (construction==BeliefSpace.Construction.REACHABLE)
+			x = Fingerprint.add(x,source);
+		return x;
+	}
+
+	//true if the image was written for this topology, and for this source if it only holds the states reachable from it
+	public boolean matches (EdgeWeightedGraph graph, int source, int goal, BeliefSpace.Construction construction) {
+		if (goal!=this.goal || construction!=this.construction)
+			return false;
+		if (construction==BeliefSpace.Construction.REACHABLE && source!=this.source)
+			return false;
+		return fingerprint==fingerprint(graph,source,goal,construction);
+	}
+
+	//number of states
+	public int states () {
+		return states;
+	}
+
+	//number of vertices
+	public int V () {
+		return V;
+	}
+
+	//how the states were created
+	public BeliefSpace.Construction construction () {
+		return construction;
+	}
+
+	//source vertex of the run that wrote the image, a FULL image serves every source
+	public int source () {
+		return source;
+	}
+
+	//goal vertex
+	public int goal () {
+		return goal;
+	}
+
+	//vertex of state id
+	public int vertex (int id) {
+		return buffer.getInt(vertices+id*4);
+	}
+
+	//key of state id
+	public BeliefKey key (int id) {
+		long [] bits = new long [3*words];
+		int base = keys+id*3*words*8;
+		for (int i=0; i<bits.length; i++)
+			bits[i]=buffer.getLong(base+i*8);
+		return new BeliefKey(V,bits);
+	}
+
+	//true if state id was retired by a topology update
+	public boolean isRetired (int id) {
+		return (buffer.getInt(flags+id*4)&RETIRED)!=0;
+	}
+
+	//first transition of state id
+	public int firstTransition (int id) {
+		return buffer.getInt(groupStart+id*4);
+	}
+
+	//one past the last transition of state id
+	public int endTransition (int id) {
+		return buffer.getInt(groupStart+(id+1)*4);
+	}
+
+	//first outcome of transition g
+	public int firstOutcome (int g) {
+		return buffer.getInt(outcomeStart+g*4);
+	}
+
+	//one past the last outcome of transition g
+	public int endOutcome (int g) {
+		return buffer.getInt(outcomeStart+(g+1)*4);
+	}
+
+	//successor state id of outcome o
+	public int successor (int o) {
+		return buffer.getInt(successors+o*4);
+	}
+}
@@ -0,0 +1,209 @@
+package pomdp;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ *  The <tt>TopologicalValueIteration</tt> class solves the belief space one strongly connected
+ *  component at a time. Certainties only move from unknown to known, so the transition graph
+ *  splits into components (states sharing the same knowledge) ordered by knowledge level.
+ *  Components are found with an iterative Tarjan search, which emits them successors first,
+ *  and each one is swept to convergence once, after every component it leads to is final.
+ *  Components at the same level (same longest distance to a sink) do not depend on each other
+ *  and are solved in parallel.
+ */
+public class TopologicalValueIteration implements Solver {
+
+	//fields
+	private static final DoubleBinaryOperator MAX = new DoubleBinaryOperator() {
+		public double applyAsDouble(double left, double right) {
+			return Math.max(left,right);
+		}
+	};
+	private final int threads;
+	private final double epsilon;
+	private final int maxIterations; //sweeps per component
+
+	//constructors
+	public TopologicalValueIteration() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public TopologicalValueIteration(int threads) {
+		this(threads,0,Integer.MAX_VALUE);
+	}
+
+	public TopologicalValueIteration(int threads, double epsilon, int maxIterations) {
+		if (epsilon<0)
+			throw new IllegalArgumentException("Tolerance must be nonnegative");
+		if (maxIterations<1)
+			throw new IllegalArgumentException("Number of iterations must be positive");
+		this.threads=threads;
+		this.epsilon=epsilon;
+		this.maxIterations=maxIterations;
+	}
+
+	public SolveResult solve(final TransitionModel transitions, final StateStore store) {
+		int n = transitions.states();
+
+		//components, in the order Tarjan emits them (successors first)
+		int [] component = new int [n];
+		final int [] members = new int [n];
+		final int [] componentStart = components(transitions,component,members);
+		int components = componentStart.length-1;
+
+		//level of a component: longest path to a sink component
+		int [] level = new int [components];
+		int levels=0;
+		for (int c=0; c<components; c++) {
+			for (int i=componentStart[c]; i<componentStart[c+1]; i++) {
+				int s = members[i];
+				for (int o=firstOutcome(transitions,s); o<endOutcome(transitions,s); o++) {
+					int next = component[transitions.successor(o)];
+					if (next!=c)
+						level[c] = Math.max(level[c],level[next]+1);
+				}
+			}
+			levels = Math.max(levels,level[c]+1);
+		}
+
+		//components grouped by level
+		int [] levelStart = new int [levels+1];
+		for (int c=0; c<components; c++)
+			levelStart[level[c]+1]++;
+		for (int l=0; l<levels; l++)
+			levelStart[l+1]+=levelStart[l];
+		final int [] byLevel = new int [components];
+		int [] fill = Arrays.copyOf(levelStart,levels);
+		for (int c=0; c<components; c++)
+			byLevel[fill[level[c]]++]=c;
+
+		//solve level by level
+		final DoubleAccumulator residual = new DoubleAccumulator(MAX,0);
+		final AtomicLong backups = new AtomicLong();
+		final AtomicInteger iterations = new AtomicInteger();
+		Parallel parallel = new Parallel(threads);
+		try {
+			for (int l=0; l<levels; l++) {
+				final int first = levelStart[l];
+				parallel.forEach(levelStart[l+1]-first,1,new Parallel.Block() {
+					public void run(int from, int to) {
+						for (int i=from; i<to; i++) {
+							int c = byLevel[first+i];
+							solveComponent(transitions,members,componentStart[c],componentStart[c+1],
+									store,residual,backups,iterations);
+						}
+					}
+				});
+			}
+		} finally {
+			parallel.shutdown();
+		}
+
+		return new SolveResult(iterations.get(),backups.get(),residual.get(),residual.get()<=epsilon);
+	}
+
+	//sweeps the members [from,to) of one component until its residual is at most epsilon
+	private void solveComponent (TransitionModel transitions, int [] members, int from, int to, StateStore store,
+			DoubleAccumulator residual, AtomicLong backups, AtomicInteger iterations) {
+		//a single state without a self loop is final after one backup
+		if (to-from==1 && !selfLoop(transitions,members[from])) {
+			ValueIteration.backup(transitions,members[from],store);
+			backups.incrementAndGet();
+			return;
+		}
+		int sweeps=0;
+		double componentResidual;
+		do {
+			componentResidual=0;
+			for (int i=to-1; i>=from; i--)
+				componentResidual = Math.max(componentResidual,ValueIteration.backup(transitions,members[i],store));
+			sweeps++;
+		} while (componentResidual>epsilon && sweeps<maxIterations);
+		residual.accumulate(componentResidual);
+		backups.addAndGet((long)sweeps*(to-from));
+		int seen = iterations.get();
+		while (sweeps>seen && !iterations.compareAndSet(seen,sweeps))
+			seen = iterations.get();
+	}
+
+	//true if some outcome of s leads back to s
+	private static boolean selfLoop (TransitionModel transitions, int s) {
+		for (int o=firstOutcome(transitions,s); o<endOutcome(transitions,s); o++) {
+			if (transitions.successor(o)==s)
+				return true;
+		}
+		return false;
+	}
+
+	//first outcome of every action of s
+	private static int firstOutcome (TransitionModel transitions, int s) {
+		return transitions.firstOutcome(transitions.firstAction(s));
+	}
+
+	//one past the last outcome of every action of s
+	private static int endOutcome (TransitionModel transitions, int s) {
+		return transitions.firstOutcome(transitions.endAction(s));
+	}
+
+	//iterative tarjan: fills component per state and members grouped by component, returns component offsets
+	static int [] components (TransitionModel transitions, int [] component, int [] members) {
+		int n = transitions.states();
+		int [] index = new int [n];
+		int [] low = new int [n];
+		int [] edge = new int [n];	//next outcome to explore per state
+		int [] stack = new int [n];	//tarjan stack
+		int [] path = new int [n];	//dfs call stack
+		boolean [] onStack = new boolean [n];
+		int [] start = new int [n+1];
+		Arrays.fill(index,-1);
+		int counter=0, top=0, components=0, emitted=0;
+
+		for (int root=0; root<n; root++) {
+			if (index[root]>=0)
+				continue;
+			int depth=0;
+			path[depth++]=root;
+			index[root]=low[root]=counter++;
+			edge[root]=firstOutcome(transitions,root);
+			stack[top++]=root;
+			onStack[root]=true;
+			while (depth>0) {
+				int s = path[depth-1];
+				if (edge[s]<endOutcome(transitions,s)) {
+					int next = transitions.successor(edge[s]++);
+					if (index[next]<0) {
+						index[next]=low[next]=counter++;
+						edge[next]=firstOutcome(transitions,next);
+						stack[top++]=next;
+						onStack[next]=true;
+						path[depth++]=next;
+					}
+					else if (onStack[next])
+						low[s] = Math.min(low[s],index[next]);
+					continue;
+				}
+				//s is done
+				depth--;
+				if (depth>0) {
+					int parent = path[depth-1];
+					low[parent] = Math.min(low[parent],low[s]);
+				}
+				if (low[s]==index[s]) {
+					int member;
+					do {
+						member = stack[--top];
+						onStack[member]=false;
+						component[member]=components;
+						members[emitted++]=member;
+					} while (member!=s);
+					start[++components]=emitted;
+				}
+			}
+		}
+		return Arrays.copyOf(start,components+1);
+	}
+}
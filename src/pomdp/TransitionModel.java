@@ -0,0 +1,242 @@
+package pomdp;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import graph.EdgeWeightedGraph;
+
+/**
+ *  The <tt>TransitionModel</tt> class is the transition structure of a belief space compiled
+ *  into compressed sparse row arrays, addressed by state id.
+ *  Actions of state s are [actionStart[s], actionStart[s+1]) in the order of the groups of the
+ *  state's row in the {@link TransitionStructure}, outcomes of action a are [outcomeStart[a], outcomeStart[a+1]).
+ *  Transition probabilities and the (food-halved) edge reward are computed once,
+ *  and outcomes with zero probability are dropped, so a Bellman backup is a loop over primitive arrays.
+ *  Rewards can be replaced when edge weights change, the structure itself is fixed.
+ */
+public class TransitionModel {
+
+	//fields
+	private final int states;
+	private final int [] actionStart;
+	private final int [] target;		//vertex moved to, per action
+	private final double [] reward;		//minus the traversal cost, per action
+	private final int [] outcomeStart;
+	private final int [] successor;		//state id, per outcome
+	private final double [] probability;	//per outcome
+	private final boolean [] terminal;
+	private int [] predecessorStart;	//reverse rows, built on first use
+	private int [] predecessor;
+
+	//compiles the transitions of structure for the states of store, indexed by state id
+	public TransitionModel(TransitionStructure structure, StateStore store, BeliefModel model) {
+		this(null,structure,store,model,null);
+	}
+
+	//compiles the transitions again after some of them changed, the rows of the states
+	//of previous that are not in changed are copied from it instead of being computed
+	public TransitionModel(TransitionModel previous, TransitionStructure structure, StateStore store, BeliefModel model, BitSet changed) {
+		EdgeWeightedGraph graph = model.graph();
+		this.states = store.size();
+		int actions=0, outcomes=0;
+		for (int s=0; s<this.states; s++) {
+			if (copied(previous,changed,s)) {
+				actions+=previous.actionStart[s+1]-previous.actionStart[s];
+				outcomes+=previous.outcomeStart[previous.actionStart[s+1]]-previous.outcomeStart[previous.actionStart[s]];
+				continue;
+			}
+			if (!structure.hasRow(s))
+				continue;
+			actions+=structure.endGroup(s)-structure.firstGroup(s);
+			outcomes+=structure.firstOutcome(structure.endGroup(s))-structure.firstOutcome(structure.firstGroup(s));
+		}
+		actionStart = new int [this.states+1];
+		target = new int [actions];
+		reward = new double [actions];
+		outcomeStart = new int [actions+1];
+		terminal = new boolean [this.states];
+		int [] successor = new int [outcomes];
+		double [] probability = new double [outcomes];
+		
+		int a=0, o=0;
+		for (int s=0; s<this.states; s++) {
+			actionStart[s]=a;
+			if (copied(previous,changed,s)) {
+				terminal[s]=previous.terminal[s];
+				for (int pa=previous.actionStart[s]; pa<previous.actionStart[s+1]; pa++) {
+					target[a]=previous.target[pa];
+					reward[a]=previous.reward[pa];
+					outcomeStart[a]=o;
+					for (int po=previous.outcomeStart[pa]; po<previous.outcomeStart[pa+1]; po++) {
+						successor[o]=previous.successor[po];
+						probability[o]=previous.probability[po];
+						o++;
+					}
+					a++;
+				}
+				continue;
+			}
+			terminal[s]=store.isTerminal(s);
+			if (!structure.hasRow(s))
+				continue;
+			int v = store.vertex(s);
+			boolean food = store.hasFood(s);
+			for (int g=structure.firstGroup(s); g<structure.endGroup(s); g++) {
+				int w = store.vertex(structure.successor(structure.firstOutcome(g)));
+				target[a]=w;
+				reward[a]=-graph.getWeight(v,w);
+				if (food)
+					reward[a]*=0.5;
+				outcomeStart[a]=o;
+				for (int j=structure.firstOutcome(g); j<structure.endOutcome(g); j++) {
+					int next = structure.successor(j);
+					double p = model.probability(store,s,next);
+					if (p>0) { //only outcomes that can occur
+						successor[o]=next;
+						probability[o]=p;
+						o++;
+					}
+				}
+				a++;
+			}
+		}
+		actionStart[this.states]=a;
+		outcomeStart[a]=o;
+		this.successor = Arrays.copyOf(successor,o);
+		this.probability = Arrays.copyOf(probability,o);
+	}
+
+	//true if the row of state s is taken from previous
+	private static boolean copied (TransitionModel previous, BitSet changed, int s) {
+		return previous!=null && s<previous.states && !changed.get(s);
+	}
+
+	//number of states
+	public int states () {
+		return states;
+	}
+
+	//number of actions
+	public int actions () {
+		return target.length;
+	}
+
+	//first action of state s
+	public int firstAction (int s) {
+		return actionStart[s];
+	}
+
+	//one past the last action of state s
+	public int endAction (int s) {
+		return actionStart[s+1];
+	}
+
+	//vertex action a moves to
+	public int target (int a) {
+		return target[a];
+	}
+
+	//reward (minus cost) of action a
+	public double reward (int a) {
+		return reward[a];
+	}
+
+	//replaces the reward of action a, after the weight of its edge changed
+	public void setReward (int a, double reward) {
+		this.reward[a]=reward;
+	}
+
+	//first outcome of action a
+	public int firstOutcome (int a) {
+		return outcomeStart[a];
+	}
+
+	//one past the last outcome of action a
+	public int endOutcome (int a) {
+		return outcomeStart[a+1];
+	}
+
+	//successor state of outcome o
+	public int successor (int o) {
+		return successor[o];
+	}
+
+	//probability of outcome o
+	public double probability (int o) {
+		return probability[o];
+	}
+
+	//true if state s is terminal
+	public boolean isTerminal (int s) {
+		return terminal[s];
+	}
+
+	//first predecessor entry of state s
+	public int firstPredecessor (int s) {
+		buildPredecessors();
+		return predecessorStart[s];
+	}
+
+	//one past the last predecessor entry of state s
+	public int endPredecessor (int s) {
+		buildPredecessors();
+		return predecessorStart[s+1];
+	}
+
+	//state id of predecessor entry i
+	public int predecessor (int i) {
+		return predecessor[i];
+	}
+
+	//builds the reverse rows: every state with an outcome leading to s, once per state
+	private synchronized void buildPredecessors () {
+		if (predecessorStart!=null)
+			return;
+		int [] start = new int [states+1];
+		int [] last = new int [states]; //last predecessor counted per successor, to skip repeats
+		Arrays.fill(last,-1);
+		for (int s=0; s<states; s++) {
+			for (int o=outcomeStart[actionStart[s]]; o<outcomeStart[actionStart[s+1]]; o++) {
+				int next = successor[o];
+				if (last[next]!=s) {
+					last[next]=s;
+					start[next+1]++;
+				}
+			}
+		}
+		for (int s=0; s<states; s++)
+			start[s+1]+=start[s];
+		int [] entries = new int [start[states]];
+		int [] fill = Arrays.copyOf(start,states);
+		Arrays.fill(last,-1);
+		for (int s=0; s<states; s++) {
+			for (int o=outcomeStart[actionStart[s]]; o<outcomeStart[actionStart[s+1]]; o++) {
+				int next = successor[o];
+				if (last[next]!=s) {
+					last[next]=s;
+					entries[fill[next]++]=s;
+				}
+			}
+		}
+		predecessor=entries;
+		predecessorStart=start;
+	}
+
+	//expected utility of taking action a, with the utilities of the successors read from store
+	public double q (int a, StateStore store) {
+		double utility=0;
+		double r = reward[a];
+		for (int o=outcomeStart[a]; o<outcomeStart[a+1]; o++)
+			utility+=probability[o]*(r+store.utility(successor[o]));
+		return utility;
+	}
+
+	//expected utility of taking action a, with the utilities of the successors read from utilities
+	public double q (int a, double [] utilities) {
+		double utility=0;
+		double r = reward[a];
+		for (int o=outcomeStart[a]; o<outcomeStart[a+1]; o++)
+			utility+=probability[o]*(r+utilities[successor[o]]);
+		return utility;
+	}
+}
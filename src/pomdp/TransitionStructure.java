@@ -0,0 +1,171 @@
+package pomdp;
+
+import java.util.Arrays;
+
+/**
+ *  The <tt>TransitionStructure</tt> class holds the legal transitions of the belief states by id,
+ *  without probabilities or rewards: per state a row of transition groups (one per neighbour that
+ *  can be moved to) and per group the ids of the states it may lead to. It depends only on the
+ *  topology and the goal, and is kept in growable primitive arrays instead of objects per state.
+ *  <p>
+ *  A row is written by {@link #startRow}, which replaces the row of the state, followed by
+ *  {@link #addGroup} and {@link #addSuccessor}; only one row is written at a time. Workers build
+ *  the rows of a block of states in a structure of their own (rows 0,1,...), which is copied with
+ *  {@link #setRow}. The space of replaced rows is reclaimed once it outgrows the space in use.
+ */
+public class TransitionStructure {
+
+	//fields
+	private int rows;						//row slots, one per state id
+	private int [] first = new int [16];	//first group per row, -1 if the transitions were not generated
+	private int [] end = new int [16];		//one past the last group per row
+	private int groups;
+	private int [] outcomeStart = new int [17];	//per group, outcomeStart[groups] is the number of outcomes
+	private int outcomes;
+	private int [] successor = new int [16];	//state id per outcome
+	private int unused;						//outcomes of replaced rows
+	private int current;					//row groups are added to
+
+	//number of row slots
+	public int rows () {
+		return rows;
+	}
+
+	//true if the transitions of state s were generated
+	public boolean hasRow (int s) {
+		return s<rows && first[s]>=0;
+	}
+
+	//first group of state s
+	public int firstGroup (int s) {
+		return first[s];
+	}
+
+	//one past the last group of state s
+	public int endGroup (int s) {
+		return end[s];
+	}
+
+	//first outcome of group g
+	public int firstOutcome (int g) {
+		return outcomeStart[g];
+	}
+
+	//one past the last outcome of group g
+	public int endOutcome (int g) {
+		return outcomeStart[g+1];
+	}
+
+	//successor state id of outcome o
+	public int successor (int o) {
+		return successor[o];
+	}
+
+	//number of groups in use
+	public int groups () {
+		int count=0;
+		for (int s=0; s<rows; s++) {
+			if (first[s]>=0)
+				count+=end[s]-first[s];
+		}
+		return count;
+	}
+
+	//number of outcomes in use
+	public int outcomes () {
+		return outcomes-unused;
+	}
+
+	//appends an empty row and returns its index
+	public int addRow () {
+		return startRow(rows);
+	}
+
+	//empties the row of state s and makes it the row groups are added to, growing the rows to hold s
+	public int startRow (int s) {
+		if (s>=rows) {
+			ensureRows(s+1);
+			Arrays.fill(first,rows,s+1,-1);
+			rows=s+1;
+		}
+		if (first[s]>=0) {
+			unused += outcomeStart[end[s]]-outcomeStart[first[s]];
+			first[s]=-1;
+			if (unused>outcomes-unused)
+				compact();
+		}
+		first[s]=groups;
+		end[s]=groups;
+		current=s;
+		return s;
+	}
+
+	//starts a group in the current row
+	public void addGroup () {
+		if (groups+2>outcomeStart.length)
+			outcomeStart = Arrays.copyOf(outcomeStart,2*outcomeStart.length);
+		groups++;
+		outcomeStart[groups]=outcomes;
+		end[current]=groups;
+	}
+
+	//adds a successor to the last group
+	public void addSuccessor (int id) {
+		if (outcomes==successor.length)
+			successor = Arrays.copyOf(successor,Math.max(16,2*outcomes));
+		successor[outcomes++]=id;
+		outcomeStart[groups]=outcomes;
+	}
+
+	//removes the last group if it has no successor
+	public void dropEmptyGroup () {
+		if (groups>first[current] && outcomeStart[groups-1]==outcomes) {
+			groups--;
+			end[current]=groups;
+		}
+	}
+
+	//sets the row of state s to row r of from (a structure that is not this one)
+	public void setRow (int s, TransitionStructure from, int r) {
+		startRow(s);
+		for (int g=from.first[r]; g<from.end[r]; g++) {
+			addGroup();
+			for (int o=from.outcomeStart[g]; o<from.outcomeStart[g+1]; o++)
+				addSuccessor(from.successor[o]);
+		}
+	}
+
+	//moves the rows in use to the front, dropping the space of replaced rows
+	private void compact () {
+		int [] newStart = new int [groups()+1];
+		int [] newSuccessor = new int [outcomes-unused];
+		int g=0, o=0;
+		for (int s=0; s<rows; s++) {
+			if (first[s]<0)
+				continue;
+			int newFirst=g;
+			for (int old=first[s]; old<end[s]; old++) {
+				int size = outcomeStart[old+1]-outcomeStart[old];
+				System.arraycopy(successor,outcomeStart[old],newSuccessor,o,size);
+				newStart[g++]=o;
+				o+=size;
+			}
+			first[s]=newFirst;
+			end[s]=g;
+		}
+		newStart[g]=o;
+		outcomeStart=newStart;
+		successor=newSuccessor;
+		groups=g;
+		outcomes=o;
+		unused=0;
+	}
+
+	private void ensureRows (int capacity) {
+		if (capacity<=first.length)
+			return;
+		int length = Math.max(capacity,2*first.length);
+		first = Arrays.copyOf(first,length);
+		end = Arrays.copyOf(end,length);
+	}
+}
@@ -0,0 +1,70 @@
+package pomdp;
+
+/**
+ *  The <tt>ValueIteration</tt> class is the in-place (Gauss-Seidel) value iteration solver.
+ *  States are swept in reverse id order on the calling thread and utilities only ever increase
+ *  (starting from minus infinity). The largest residual is tracked during each sweep and it stops
+ *  once it is at most epsilon, or after maxIterations sweeps. With the default epsilon of 0
+ *  it stops after a sweep in which no utility changed.
+ */
+public class ValueIteration implements Solver {
+
+	//fields
+	private final double epsilon;
+	private final int maxIterations;
+
+	//constructors
+	public ValueIteration() {
+		this(0,Integer.MAX_VALUE);
+	}
+
+	public ValueIteration(double epsilon, int maxIterations) {
+		if (epsilon<0)
+			throw new IllegalArgumentException("Tolerance must be nonnegative");
+		if (maxIterations<1)
+			throw new IllegalArgumentException("Number of iterations must be positive");
+		this.epsilon=epsilon;
+		this.maxIterations=maxIterations;
+	}
+
+	public SolveResult solve(TransitionModel transitions, StateStore store) {
+		int n = transitions.states();
+		int iterations=0;
+		double residual;
+		do { //while utilities keep changing 
+			residual=0;
+			for (int s=n-1; s>=0; s--)
+				residual = Math.max(residual,backup(transitions,s,store));
+			iterations++;
+		} while (residual>epsilon && iterations<maxIterations);
+		return new SolveResult(iterations,(long)iterations*n,residual,residual<=epsilon);
+	}
+
+	//bellman backup of state s in the columns of store, returns the utility increase (infinite for a first finite value)
+	static double backup (TransitionModel transitions, int s, StateStore store) {
+		//state is terminal, no transitions, utility always 0
+		if (transitions.isTerminal(s))
+			return 0;
+		
+		//state is not terminal, find best utility over every action
+		int first = transitions.firstAction(s);
+		int end = transitions.endAction(s);
+		double old = store.utility(s);
+		double maxUtility = old;
+		int bestAction = -1;
+		for (int a=first; a<end; a++) {
+			double utility = transitions.q(a,store);
+			if (utility>maxUtility) {
+				maxUtility=utility;
+				bestAction=a;
+			}
+		}
+		if (bestAction<0)
+			return 0;
+		
+		//update utility
+		store.setUtility(s,maxUtility);
+		store.setAction(s,bestAction-first);
+		return maxUtility-old;
+	}
+}
@@ -0,0 +1,118 @@
+package pomdp;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.NoSuchElementException;
+
+import env.VertexInfo;
+import io.In;
+
+/**
+ *  The <tt>VertexInfoWatcher</tt> class keeps a solved {@link BeliefSpace} in step with a
+ *  food & police probability file (the <tt>vertexInfo.txt</tt> format). A daemon thread waits
+ *  for modifications of the file and hands every new version to
+ *  {@link BeliefSpace#updateProbabilities}, so the policy re-converges from the previous utilities.
+ *  A file that can not be read or parsed (e.g. while it is being written) is reported to the log and
+ *  skipped until the next modification; any other failure of the re-solve ends the watcher.
+ *  The new transitions are compiled while the current policy keeps answering queries, see
+ *  {@link BeliefSpace#updateProbabilities}.
+ */
+public class VertexInfoWatcher implements Runnable {
+
+	//fields
+	private final BeliefSpace space;
+	private final Path file;
+	private final WatchService watcher;
+	private final PrintStream log;	//gets a line per re-solve, may be null
+	private volatile SolveResult lastResult;
+
+	//constructors, start watching the directory of the file
+	public VertexInfoWatcher(BeliefSpace space, String file) throws IOException {
+		this(space,file,null);
+	}
+
+	public VertexInfoWatcher(BeliefSpace space, String file, PrintStream log) throws IOException {
+		this.space=space;
+		this.log=log;
+		this.file = Paths.get(file).toAbsolutePath();
+		this.watcher = FileSystems.getDefault().newWatchService();
+		this.file.getParent().register(watcher,StandardWatchEventKinds.ENTRY_MODIFY,StandardWatchEventKinds.ENTRY_CREATE);
+	}
+
+	//runs the watcher on a new daemon thread
+	public Thread start () {
+		Thread thread = new Thread(this,"vertex info watcher");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	//stops watching
+	public void close () throws IOException {
+		watcher.close();
+	}
+
+	//result of the last re-solve, null before the first one
+	public SolveResult getLastResult () {
+		return lastResult;
+	}
+
+	public void run() {
+		try {
+			while (true) {
+				WatchKey key = watcher.take();
+				boolean modified=false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind()!=StandardWatchEventKinds.OVERFLOW && file.getFileName().equals(event.context()))
+						modified=true;
+				}
+				if (modified)
+					reload();
+				if (!key.reset())
+					return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			//closed, stop watching
+		}
+	}
+
+	//reads the file and re-solves the belief space
+	private void reload () {
+		VertexInfo VI;
+		try {
+			In in = new In(file.toFile());
+			VI = new VertexInfo(in);
+			in.close();
+		} catch (NoSuchElementException e) {
+			//incomplete (or a token that is not a number), wait for the next modification
+			report("Food & police probabilities in "+file.getFileName()+" could not be read ("+e+"), keeping the current policy.");
+			return;
+		} catch (IllegalArgumentException e) {
+			//could not be opened, e.g. while it is being replaced
+			report("Food & police probabilities in "+file.getFileName()+" could not be read ("+e.getMessage()+"), keeping the current policy.");
+			return;
+		}
+		if (VI.V()!=space.getStore().V()) {
+			report("Food & police probabilities in "+file.getFileName()+" are for "+VI.V()+" vertices instead of "+space.getStore().V()+", keeping the current policy.");
+			return;
+		}
+		lastResult = space.updateProbabilities(VI);
+		report("Food & police probabilities reloaded from "+file.getFileName()+", optimal policy recalculated ("+lastResult+").");
+	}
+
+	//prints a line to the log, if there is one
+	private void report (String line) {
+		if (log!=null)
+			log.println(line);
+	}
+}
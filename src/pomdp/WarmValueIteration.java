@@ -0,0 +1,111 @@
+package pomdp;
+
+/**
+ *  The <tt>WarmValueIteration</tt> class is the in-place (Gauss-Seidel) value iteration solver
+ *  for a store that already holds the utilities of a similar problem, e.g. after the transition
+ *  probabilities changed. Unlike {@link ValueIteration} a backup always takes the best action,
+ *  so utilities may fall as well as rise, and it stops once the largest change of a sweep is at
+ *  most epsilon, or after maxIterations sweeps.
+ *  <p>
+ *  States that lost every policy reaching a terminal state (dead ends) would fall by one step cost
+ *  per sweep, so they are found first with a boolean fixed point over the transition structure,
+ *  the same one value iteration from minus infinity reaches, and set to minus infinity.
+ */
+public class WarmValueIteration implements Solver {
+
+	//fields
+	private final double epsilon;
+	private final int maxIterations;
+
+	//constructors
+	public WarmValueIteration() {
+		this(0,Integer.MAX_VALUE);
+	}
+
+	public WarmValueIteration(double epsilon, int maxIterations) {
+		if (epsilon<0)
+			throw new IllegalArgumentException("Tolerance must be nonnegative");
+		if (maxIterations<1)
+			throw new IllegalArgumentException("Number of iterations must be positive");
+		this.epsilon=epsilon;
+		this.maxIterations=maxIterations;
+	}
+
+	public SolveResult solve(TransitionModel transitions, StateStore store) {
+		int n = transitions.states();
+		boolean [] proper = proper(transitions);
+		for (int s=0; s<n; s++) {
+			if (!proper[s]) {
+				store.setUtility(s,Double.NEGATIVE_INFINITY);
+				store.setAction(s,-1);
+			}
+		}
+		int iterations=0;
+		double residual;
+		do { //while utilities keep changing
+			residual=0;
+			for (int s=n-1; s>=0; s--) {
+				if (proper[s])
+					residual = Math.max(residual,backup(transitions,s,store));
+			}
+			iterations++;
+		} while (residual>epsilon && iterations<maxIterations);
+		return new SolveResult(iterations,(long)iterations*n,residual,residual<=epsilon);
+	}
+
+	//states with an action whose outcomes are all terminal or proper themselves,
+	//the states with a finite utility
+	static boolean [] proper (TransitionModel transitions) {
+		int n = transitions.states();
+		boolean [] proper = new boolean [n];
+		boolean changed;
+		do { //while states keep becoming proper
+			changed=false;
+			for (int s=n-1; s>=0; s--) {
+				if (proper[s])
+					continue;
+				if (transitions.isTerminal(s)) {
+					proper[s]=true;
+					changed=true;
+					continue;
+				}
+				for (int a=transitions.firstAction(s); a<transitions.endAction(s) && !proper[s]; a++) {
+					if (transitions.reward(a)==Double.NEGATIVE_INFINITY)
+						continue;
+					boolean all=true;
+					for (int o=transitions.firstOutcome(a); o<transitions.endOutcome(a) && all; o++)
+						all = proper[transitions.successor(o)];
+					proper[s]=all;
+				}
+				changed |= proper[s];
+			}
+		} while (changed);
+		return proper;
+	}
+
+	//bellman backup of state s in the columns of store, returns the utility change (infinite if it left minus infinity)
+	static double backup (TransitionModel transitions, int s, StateStore store) {
+		//state is terminal, no transitions, utility always 0
+		if (transitions.isTerminal(s))
+			return 0;
+
+		//state is not terminal, find best utility over every action
+		int first = transitions.firstAction(s);
+		int end = transitions.endAction(s);
+		double maxUtility = Double.NEGATIVE_INFINITY;
+		int bestAction = -1;
+		for (int a=first; a<end; a++) {
+			double utility = transitions.q(a,store);
+			if (bestAction<0 || utility>maxUtility) {
+				maxUtility=utility;
+				bestAction=a;
+			}
+		}
+
+		//update utility
+		double old = store.utility(s);
+		store.setUtility(s,maxUtility);
+		store.setAction(s, (maxUtility==Double.NEGATIVE_INFINITY) ? -1 : bestAction-first);
+		return (old==maxUtility) ? 0 : Math.abs(maxUtility-old);
+	}
+}